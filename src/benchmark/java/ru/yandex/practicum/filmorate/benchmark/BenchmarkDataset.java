@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.yandex.practicum.filmorate.service.FriendGraphIndex;
+import ru.yandex.practicum.filmorate.service.FriendRecommender;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.FriendshipDbStorage;
+import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Отдельная БД H2 в памяти с детерминированными данными заданного размера и собранные поверх неё хранилища.
+ * Компоненты создаются напрямую, без контекста Spring, поэтому замеряется сам код хранилищ и сервисов.
+ * Данные строит {@link DatasetGenerator}.
+ */
+public final class BenchmarkDataset {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    public final JdbcTemplate jdbcTemplate;
+    public final FilmDbStorage filmStorage;
+    public final UserDbStorage userStorage;
+    public final FriendshipDbStorage friendshipStorage;
+    public final FriendGraphIndex friendGraph;
+    public final UserService userService;
+    public final int users;
+    public final int films;
+
+    private BenchmarkDataset(JdbcTemplate jdbcTemplate, int users, int films) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.users = users;
+        this.films = films;
+        ReferenceDataRegistry referenceData = new ReferenceDataRegistry(new GenreDbStorage(jdbcTemplate),
+                new MpaDbStorage(jdbcTemplate));
+        referenceData.refresh();
+        this.filmStorage = new FilmDbStorage(jdbcTemplate, referenceData);
+        this.userStorage = new UserDbStorage(jdbcTemplate);
+        this.friendshipStorage = new FriendshipDbStorage(jdbcTemplate);
+        this.friendGraph = new FriendGraphIndex(friendshipStorage);
+        friendGraph.rebuild();
+        this.userService = new UserService(userStorage, friendshipStorage, friendGraph,
+                new FriendRecommender(friendGraph, 10_000));
+    }
+
+    public static BenchmarkDataset create(int users, int films, int likesPerUser, int friendsPerUser, long seed) {
+        String url = "jdbc:h2:mem:benchmark" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url, "sa", "password");
+        DatasetGenerator.populate(dataSource,
+                new DatasetGenerator.Spec(users, films, likesPerUser, friendsPerUser, seed));
+        return new BenchmarkDataset(new JdbcTemplate(dataSource), users, films);
+    }
+
+    public void drop() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+}
@@ -0,0 +1,419 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.util.StreamUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Генератор больших синтетических наборов данных по схеме schema.sql.
+ * Лайки подчиняются степенному закону (закон Ципфа), дружба образует граф «тесного мира» Уоттса — Строгаца.
+ * Каждый блок строк получает собственный генератор случайных чисел, выведенный из seed и номера блока,
+ * поэтому результат не зависит от числа потоков.
+ * Таблицы загружаются параллельно, каждая по своему соединению, пакетными вставками в порядке первичного ключа,
+ * с отключёнными внешними ключами и без вторичных индексов, которые строятся заново после загрузки.
+ */
+@Slf4j
+public final class DatasetGenerator {
+    private static final int CHUNK_ROWS = 50_000;
+    private static final int BATCH_SIZE = 10_000;
+    private static final int GENRES = 6;
+    private static final int MPA_RATINGS = 5;
+    private static final int MAX_LIKES_FACTOR = 20;
+    private static final double REWIRE_PROBABILITY = 0.1;
+    private static final LocalDate FIRST_BIRTHDAY = LocalDate.of(1950, 1, 1);
+    private static final LocalDate FIRST_RELEASE = LocalDate.of(1950, 1, 1);
+    private static final Pattern INDEX_NAME = Pattern.compile("CREATE INDEX IF NOT EXISTS (\\w+)",
+            Pattern.CASE_INSENSITIVE);
+
+    private DatasetGenerator() {
+    }
+
+    public record Spec(int users, int films, int likesPerUser, int friendsPerUser, long seed) {
+        public Spec {
+            if (users < 2 || films < 1 || likesPerUser < 0 || friendsPerUser < 0) {
+                throw new IllegalArgumentException("Нужно не меньше двух пользователей и одного фильма, " +
+                        "число лайков и друзей не может быть отрицательным");
+            }
+        }
+    }
+
+    private enum Table {
+        USERS, FILMS, FILM_GENRES, LIKES, FRIENDSHIPS
+    }
+
+    /**
+     * Пересоздаёт схему в указанной БД и заполняет её данными. Источник данных должен выдавать
+     * несколько соединений одновременно.
+     */
+    public static void populate(DataSource dataSource, Spec spec) {
+        // Пока открыто это соединение, файловая БД не закрывается и не теряет настройку REFERENTIAL_INTEGRITY
+        try (Connection anchor = dataSource.getConnection()) {
+            populate(dataSource, anchor, spec);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось загрузить набор данных", e);
+        }
+    }
+
+    private static void populate(DataSource dataSource, Connection anchor, Spec spec) throws SQLException {
+        long started = System.nanoTime();
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"))
+                .populate(anchor);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(anchor, true));
+        Map<String, String> indexes = secondaryIndexes();
+        indexes.keySet().forEach(name -> jdbcTemplate.execute("DROP INDEX IF EXISTS " + name));
+
+        long[] likes = generatePairs(spec, Table.LIKES, DatasetGenerator::generateLikes);
+        // Первичный ключ лайков — (film_id, user_id), поэтому пары переставляются и сортируются
+        flip(likes);
+        Arrays.parallelSort(likes);
+        long[] friendships = generatePairs(spec, Table.FRIENDSHIPS, DatasetGenerator::generateFriendships);
+        int[] likeCounts = new int[spec.films() + 1];
+        for (long like : likes) {
+            likeCounts[(int) (like >>> 32)]++;
+        }
+        log.info("Набор данных {} сгенерирован за {} мс: {} лайков, {} связей дружбы", spec,
+                elapsedMillis(started), likes.length, friendships.length);
+
+        jdbcTemplate.execute("SET REFERENTIAL_INTEGRITY FALSE");
+        try {
+            runParallel(List.of(
+                    () -> insert(dataSource, spec, Table.USERS, "INSERT INTO users (id, email, login, name, " +
+                            "birthday) VALUES (?, ?, ?, ?, ?)", spec.users(), userRow()),
+                    () -> insert(dataSource, spec, Table.FILMS, "INSERT INTO films (id, name, description, " +
+                            "release_date, duration, mpa_id, like_count) VALUES (?, ?, ?, ?, ?, ?, ?)", spec.films(),
+                            filmRow(likeCounts)),
+                    () -> insert(dataSource, spec, Table.FILM_GENRES, "INSERT INTO film_genres (film_id, genre_id) " +
+                            "VALUES (?, ?)", spec.films(), filmGenreRow()),
+                    () -> insertPairs(dataSource, Table.LIKES, "INSERT INTO likes (film_id, user_id) VALUES (?, ?)",
+                            likes),
+                    () -> insertPairs(dataSource, Table.FRIENDSHIPS, "INSERT INTO friendships (user_id, friend_id, " +
+                            "confirmed) VALUES (?, ?, TRUE)", friendships)));
+            jdbcTemplate.execute("ALTER TABLE users ALTER COLUMN id RESTART WITH " + (spec.users() + 1));
+            jdbcTemplate.execute("ALTER TABLE films ALTER COLUMN id RESTART WITH " + (spec.films() + 1));
+            // DDL в H2 блокирует системную таблицу, поэтому индексы строятся по одному
+            indexes.values().forEach(jdbcTemplate::execute);
+        } finally {
+            jdbcTemplate.execute("SET REFERENTIAL_INTEGRITY TRUE");
+        }
+        jdbcTemplate.execute("ANALYZE");
+        log.info("Набор данных загружен за {} мс", elapsedMillis(started));
+    }
+
+    /**
+     * Запуск из командной строки: {@code url=... users=... films=... likes-per-user=... friends-per-user=... seed=...},
+     * допускается и форма {@code --users=...}. Схема в указанной БД пересоздаётся.
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String option = arg.startsWith("--") ? arg.substring(2) : arg;
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Ожидался аргумент вида имя=значение: " + arg);
+            }
+            options.put(option.substring(0, separator), option.substring(separator + 1));
+        }
+        Spec spec = new Spec(
+                Integer.parseInt(options.getOrDefault("users", "1000000")),
+                Integer.parseInt(options.getOrDefault("films", "200000")),
+                Integer.parseInt(options.getOrDefault("likes-per-user", "20")),
+                Integer.parseInt(options.getOrDefault("friends-per-user", "10")),
+                Long.parseLong(options.getOrDefault("seed", "42")));
+        DataSource dataSource = new DriverManagerDataSource(
+                options.getOrDefault("url", "jdbc:h2:file:./db/filmorate-large"),
+                options.getOrDefault("username", "sa"),
+                options.getOrDefault("password", "password"));
+        populate(dataSource, spec);
+        // После массовой загрузки файл БД содержит много устаревших страниц
+        new JdbcTemplate(dataSource).execute("SHUTDOWN COMPACT");
+    }
+
+    // Пары (user_id, другой ID) по блокам пользователей; внутри пользователя пары отсортированы
+    private static long[] generatePairs(Spec spec, Table table, PairGenerator generator) {
+        return IntStream.range(0, chunks(spec.users())).parallel()
+                .mapToObj(chunk -> {
+                    SplittableRandom random = random(spec, table, chunk);
+                    PairList pairs = new PairList();
+                    for (int userId = firstId(chunk); userId <= lastId(chunk, spec.users()); userId++) {
+                        int from = pairs.size;
+                        generator.generate(spec, random, userId, pairs);
+                        pairs.sortAndDistinctFrom(from);
+                    }
+                    return pairs.toArray();
+                })
+                .reduce(DatasetGenerator::concat)
+                .orElseThrow();
+    }
+
+    // Число лайков пользователя распределено экспоненциально, выбор фильма — по закону Ципфа
+    private static void generateLikes(Spec spec, SplittableRandom random, int userId, PairList pairs) {
+        if (spec.likesPerUser() == 0) {
+            return;
+        }
+        int maxLikes = Math.min(spec.films(), spec.likesPerUser() * MAX_LIKES_FACTOR);
+        int likes = Math.min(maxLikes, 1 + (int) (-(spec.likesPerUser() - 1) * Math.log(1 - random.nextDouble())));
+        long stride = stride(spec.films());
+        for (int i = 0; i < likes; i++) {
+            pairs.add(userId, zipfFilm(random, spec.films(), stride));
+        }
+    }
+
+    // Кольцо, где каждый дружит с ближайшими соседями, а часть связей перенаправлена случайным пользователям
+    private static void generateFriendships(Spec spec, SplittableRandom random, int userId, PairList pairs) {
+        int friends = Math.min(spec.friendsPerUser(), spec.users() - 1);
+        for (int offset = 1; offset <= friends; offset++) {
+            int friendId = random.nextDouble() < REWIRE_PROBABILITY
+                    ? 1 + random.nextInt(spec.users())
+                    : 1 + (userId - 1 + offset) % spec.users();
+            if (friendId != userId) {
+                pairs.add(userId, friendId);
+            }
+        }
+    }
+
+    private static RowBinder userRow() {
+        return (statement, id, random) -> {
+            statement.setInt(1, id);
+            statement.setString(2, "user" + id + "@example.com");
+            statement.setString(3, "user" + id);
+            statement.setString(4, "User " + id);
+            statement.setDate(5, Date.valueOf(FIRST_BIRTHDAY.plusDays(random.nextInt(50 * 365))));
+            statement.addBatch();
+        };
+    }
+
+    private static RowBinder filmRow(int[] likeCounts) {
+        return (statement, id, random) -> {
+            statement.setInt(1, id);
+            statement.setString(2, "Film " + id);
+            statement.setString(3, "Description of film " + id);
+            statement.setDate(4, Date.valueOf(FIRST_RELEASE.plusDays(random.nextInt(70 * 365))));
+            statement.setInt(5, 60 + random.nextInt(120));
+            statement.setInt(6, 1 + random.nextInt(MPA_RATINGS));
+            statement.setInt(7, likeCounts[id]);
+            statement.addBatch();
+        };
+    }
+
+    // Один или два разных жанра в порядке возрастания
+    private static RowBinder filmGenreRow() {
+        return (statement, id, random) -> {
+            int first = 1 + random.nextInt(GENRES);
+            int second = random.nextBoolean() ? 1 + (first + random.nextInt(GENRES - 1)) % GENRES : first;
+            statement.setInt(1, id);
+            statement.setInt(2, Math.min(first, second));
+            statement.addBatch();
+            if (second != first) {
+                statement.setInt(1, id);
+                statement.setInt(2, Math.max(first, second));
+                statement.addBatch();
+            }
+        };
+    }
+
+    private static Void insert(DataSource dataSource, Spec spec, Table table, String sql, int rows, RowBinder binder)
+            throws SQLException {
+        long started = System.nanoTime();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            connection.setAutoCommit(false);
+            for (int chunk = 0; chunk < chunks(rows); chunk++) {
+                SplittableRandom random = random(spec, table, chunk);
+                for (int id = firstId(chunk); id <= lastId(chunk, rows); id++) {
+                    binder.bind(statement, id, random);
+                    if (id % BATCH_SIZE == 0) {
+                        flush(connection, statement);
+                    }
+                }
+            }
+            flush(connection, statement);
+        }
+        log.info("Таблица {} загружена за {} мс", table, elapsedMillis(started));
+        return null;
+    }
+
+    private static Void insertPairs(DataSource dataSource, Table table, String sql, long[] pairs)
+            throws SQLException {
+        long started = System.nanoTime();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < pairs.length; i++) {
+                statement.setInt(1, (int) (pairs[i] >>> 32));
+                statement.setInt(2, (int) pairs[i]);
+                statement.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    flush(connection, statement);
+                }
+            }
+            flush(connection, statement);
+        }
+        log.info("Таблица {} загружена за {} мс", table, elapsedMillis(started));
+        return null;
+    }
+
+    private static void flush(Connection connection, PreparedStatement statement) throws SQLException {
+        statement.executeBatch();
+        connection.commit();
+    }
+
+    /**
+     * Ранг фильма с вероятностью, обратно пропорциональной рангу. Ранги разбросаны по ID умножением
+     * на взаимно простой шаг, чтобы популярные фильмы не шли подряд в начале таблицы.
+     */
+    private static int zipfFilm(SplittableRandom random, int films, long stride) {
+        int rank = (int) Math.pow(films + 1.0, random.nextDouble());
+        return 1 + (int) ((rank - 1) * stride % films);
+    }
+
+    private static long stride(int films) {
+        long stride = Math.max(1, (long) (films * 0.618));
+        while (gcd(stride, films) != 1) {
+            stride++;
+        }
+        return stride;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static SplittableRandom random(Spec spec, Table table, int chunk) {
+        return new SplittableRandom(mix(spec.seed() + mix(table.ordinal() + 1L) + mix(-chunk - 1L)));
+    }
+
+    // Финализатор SplitMix64: соседние seed дают несвязанные последовательности
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    private static void runParallel(List<Callable<Void>> tasks) {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(tasks.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Загрузка набора данных прервана", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Не удалось загрузить набор данных", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Имена и DDL вторичных индексов из schema.sql: на время загрузки они удаляются
+    private static Map<String, String> secondaryIndexes() {
+        String schema;
+        try {
+            schema = StreamUtils.copyToString(new ClassPathResource("schema.sql").getInputStream(),
+                    StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Map<String, String> indexes = new HashMap<>();
+        Stream.of(schema.split(";")).map(String::trim).forEach(statement -> {
+            Matcher matcher = INDEX_NAME.matcher(statement);
+            if (matcher.lookingAt()) {
+                indexes.put(matcher.group(1), statement);
+            }
+        });
+        return indexes;
+    }
+
+    private static void flip(long[] pairs) {
+        Arrays.parallelSetAll(pairs, i -> (pairs[i] << 32) | (pairs[i] >>> 32));
+    }
+
+    private static long[] concat(long[] left, long[] right) {
+        long[] result = Arrays.copyOf(left, left.length + right.length);
+        System.arraycopy(right, 0, result, left.length, right.length);
+        return result;
+    }
+
+    private static int chunks(int rows) {
+        return (rows + CHUNK_ROWS - 1) / CHUNK_ROWS;
+    }
+
+    private static int firstId(int chunk) {
+        return chunk * CHUNK_ROWS + 1;
+    }
+
+    private static int lastId(int chunk, int rows) {
+        return Math.min(rows, (chunk + 1) * CHUNK_ROWS);
+    }
+
+    private static long elapsedMillis(long started) {
+        return (System.nanoTime() - started) / 1_000_000;
+    }
+
+    @FunctionalInterface
+    private interface PairGenerator {
+        void generate(Spec spec, SplittableRandom random, int userId, PairList pairs);
+    }
+
+    @FunctionalInterface
+    private interface RowBinder {
+        void bind(PreparedStatement statement, int id, SplittableRandom random) throws SQLException;
+    }
+
+    // Пары двух int, упакованные в long: старшая половина — первый столбец первичного ключа
+    private static final class PairList {
+        private long[] values = new long[1024];
+        private int size;
+
+        private void add(int first, int second) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = ((long) first << 32) | second;
+        }
+
+        private void sortAndDistinctFrom(int from) {
+            Arrays.sort(values, from, size);
+            int last = from;
+            for (int i = from; i < size; i++) {
+                if (i == from || values[i] != values[last - 1]) {
+                    values[last++] = values[i];
+                }
+            }
+            size = last;
+        }
+
+        private long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация фильма и страницы фильмов тем же ObjectMapper, что собирает Spring MVC.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilmSerializationBenchmark {
+    private ObjectMapper objectMapper;
+    private Film film;
+    private List<Film> page;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        film = film(1);
+        page = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            page.add(film(i));
+        }
+    }
+
+    @Benchmark
+    public byte[] singleFilm() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(film);
+    }
+
+    @Benchmark
+    public byte[] pageOfFilms() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    private static Film film(int id) {
+        Film film = new Film();
+        film.setId(id);
+        film.setName("Film " + id);
+        film.setDescription("Description of film " + id);
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(120);
+        film.setLikeCount(id * 10);
+        MpaRating mpa = new MpaRating();
+        mpa.setId(3);
+        mpa.setName("PG-13");
+        film.setMpa(mpa);
+        for (int genreId = 1; genreId <= 2; genreId++) {
+            Genre genre = new Genre();
+            genre.setId(genreId);
+            genre.setName("Genre " + genreId);
+            film.getGenres().add(genre);
+        }
+        return film;
+    }
+}
@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение фильмов из H2. Ранжирование по счётчику like_count сравнивается со старым вариантом,
+ * который считал лайки через GROUP BY по всей таблице likes: оба запроса возвращают одинаковые пары (id, likes),
+ * поэтому разница во времени приходится только на ранжирование. Полный путь с загрузкой фильмов — popularFilms.
+ * Наборы данных содержат около 100 тысяч, 1 миллиона и 10 миллионов лайков. Самому большому нужна куча
+ * в несколько гигабайт, его удобнее запускать отдельно: -p films=100000 -jvmArgsAppend -Xmx8g.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilmStorageBenchmark {
+    private static final String LIKE_COUNT_POPULAR_SQL = "SELECT f.id, f.like_count AS likes FROM films f " +
+            "ORDER BY likes DESC, f.id LIMIT ?";
+    private static final String GROUP_BY_POPULAR_SQL = "SELECT f.id, COUNT(l.user_id) AS likes FROM films f " +
+            "LEFT JOIN likes l ON f.id = l.film_id GROUP BY f.id ORDER BY likes DESC, f.id LIMIT ?";
+
+    @Param({"1000", "10000", "100000"})
+    public int films;
+
+    @Param({"60"})
+    public int likesPerUser;
+
+    private BenchmarkDataset dataset;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = BenchmarkDataset.create(films * 2, films, likesPerUser, 10, 42);
+        random = new SplittableRandom(7);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataset.drop();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> popularByLikeCount() {
+        return dataset.jdbcTemplate.queryForList(LIKE_COUNT_POPULAR_SQL, 10);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> popularByGroupBy() {
+        return dataset.jdbcTemplate.queryForList(GROUP_BY_POPULAR_SQL, 10);
+    }
+
+    @Benchmark
+    public List<Film> popularFilms() {
+        return dataset.filmStorage.getPopularFilms(10, null, null, null);
+    }
+
+    @Benchmark
+    public List<Film> popularByGenre() {
+        return dataset.filmStorage.getPopularFilms(10, 2, null, null);
+    }
+
+    @Benchmark
+    public Film filmById() {
+        return dataset.filmStorage.getFilmById(1 + random.nextInt(films));
+    }
+
+    @Benchmark
+    public List<Film> page() {
+        return dataset.filmStorage.getPage(random.nextInt(films), 100);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public List<Film> all() {
+        return dataset.filmStorage.getAll();
+    }
+}
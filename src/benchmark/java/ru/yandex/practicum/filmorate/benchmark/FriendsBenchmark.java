@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Друзья и общие друзья: через граф в памяти (UserService) и чистым SQL (UserDbStorage).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FriendsBenchmark {
+    @Param({"10000"})
+    public int users;
+
+    @Param({"10", "100"})
+    public int friendsPerUser;
+
+    private BenchmarkDataset dataset;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = BenchmarkDataset.create(users, 100, 1, friendsPerUser, 42);
+        random = new SplittableRandom(7);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataset.drop();
+    }
+
+    @Benchmark
+    public List<User> friendsFromGraph() {
+        return dataset.userService.getFriends(randomUser());
+    }
+
+    @Benchmark
+    public List<User> friendsFromSql() {
+        return dataset.userStorage.getFriendUsers(randomUser());
+    }
+
+    @Benchmark
+    public List<User> commonFriendsFromGraph() {
+        return dataset.userService.getCommonFriends(randomUser(), randomUser());
+    }
+
+    @Benchmark
+    public List<User> commonFriendsFromSql() {
+        return dataset.userStorage.getCommonFriendUsers(randomUser(), randomUser());
+    }
+
+    @Benchmark
+    public int[] friendsOfFriendsFromGraph() {
+        return dataset.friendGraph.getFriendsOfFriends(randomUser(), 0, Integer.MAX_VALUE);
+    }
+
+    private int randomUser() {
+        return 1 + random.nextInt(users);
+    }
+}
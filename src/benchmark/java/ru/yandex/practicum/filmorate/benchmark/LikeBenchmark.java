@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись лайка и его снятие: одна операция ставит лайк и сразу убирает его, чтобы данные не росли между итерациями.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LikeBenchmark {
+    @Param({"10000"})
+    public int films;
+
+    private BenchmarkDataset dataset;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = BenchmarkDataset.create(films, films, 5, 1, 42);
+        random = new SplittableRandom(7);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataset.drop();
+    }
+
+    @Benchmark
+    public boolean addAndRemoveLike() {
+        int filmId = 1 + random.nextInt(films);
+        int userId = 1 + random.nextInt(dataset.users);
+        boolean added = dataset.filmStorage.addLike(filmId, userId);
+        if (added) {
+            dataset.filmStorage.removeLike(filmId, userId);
+        }
+        return added;
+    }
+}
@@ -0,0 +1,345 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Нагрузочный прогон всего приложения: поднимает FilmorateApplication на свободном порту поверх H2,
+ * заполненной {@link DatasetGenerator}, и шлёт HTTP-запросы по заданной смеси эндпоинтов с постоянной частотой.
+ * Модель открытая: моменты отправки расписаны заранее и не ждут ответов, а задержка отсчитывается
+ * от запланированного момента, поэтому отставание клиента под нагрузкой не скрывает медленные ответы
+ * (coordinated omission). Для каждого эндпоинта выводятся пропускная способность и перцентили p50/p99/p999.
+ * Неудачные запросы, включая таймауты и обрывы соединения, входят в перцентили с задержкой до момента ошибки,
+ * а их задержки дополнительно выводятся отдельной таблицей.
+ */
+@Slf4j
+public final class LoadHarness {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final String DEFAULT_MIX = "films.get:25,films.popular:15,films.popular.genre:5,films.page:5," +
+            "films.search:5,films.like:5,films.unlike:5,users.get:10,users.friends:10,users.common:5," +
+            "users.recommendations:2,genres:4,mpa:4";
+
+    private LoadHarness() {
+    }
+
+    @FunctionalInterface
+    private interface RequestFactory {
+        HttpRequest.Builder create(URI base, SplittableRandom random, int users, int films);
+    }
+
+    private record Endpoint(String name, RequestFactory factory) {
+    }
+
+    private static final Map<String, Endpoint> ENDPOINTS = endpoints(
+            new Endpoint("films.get", (base, random, users, films) ->
+                    get(base, "/films/" + id(random, films))),
+            new Endpoint("films.popular", (base, random, users, films) ->
+                    get(base, "/films/popular?count=10")),
+            new Endpoint("films.popular.genre", (base, random, users, films) ->
+                    get(base, "/films/popular?count=10&genreId=" + (1 + random.nextInt(6)))),
+            new Endpoint("films.page", (base, random, users, films) ->
+                    get(base, "/films?after=" + random.nextInt(films) + "&limit=50")),
+            new Endpoint("films.search", (base, random, users, films) ->
+                    get(base, "/films/search?q=film+" + id(random, films))),
+            new Endpoint("films.like", (base, random, users, films) ->
+                    HttpRequest.newBuilder(base.resolve("/films/" + id(random, films) + "/like/" + id(random, users)))
+                            .PUT(HttpRequest.BodyPublishers.noBody())),
+            new Endpoint("films.unlike", (base, random, users, films) ->
+                    HttpRequest.newBuilder(base.resolve("/films/" + id(random, films) + "/like/" + id(random, users)))
+                            .DELETE()),
+            new Endpoint("users.get", (base, random, users, films) ->
+                    get(base, "/users/" + id(random, users))),
+            new Endpoint("users.friends", (base, random, users, films) ->
+                    get(base, "/users/" + id(random, users) + "/friends")),
+            new Endpoint("users.common", (base, random, users, films) -> {
+                int userId = id(random, users);
+                return get(base, "/users/" + userId + "/friends/common/" + (1 + userId % users));
+            }),
+            new Endpoint("users.recommendations", (base, random, users, films) ->
+                    get(base, "/users/" + id(random, users) + "/recommendations")),
+            new Endpoint("genres", (base, random, users, films) -> get(base, "/genres")),
+            new Endpoint("mpa", (base, random, users, films) -> get(base, "/mpa")));
+
+    /**
+     * Параметры вида {@code имя=значение}:
+     * <ul>
+     *     <li>{@code rate} — запросов в секунду (500), {@code duration} и {@code warmup} — длительность замера
+     *     и прогрева в формате ISO-8601 (PT30S и PT10S);</li>
+     *     <li>{@code mix} — веса эндпоинтов, например {@code films.get:3,genres:1};</li>
+     *     <li>{@code url} — БД; по умолчанию новая H2 в памяти, которая заполняется генератором с параметрами
+     *     {@code users}, {@code films}, {@code likes-per-user}, {@code friends-per-user}, {@code seed};
+     *     {@code generate=false} оставляет данные в указанной БД как есть;</li>
+     *     <li>{@code profiles} — профили Spring приложения через запятую;
+     *     {@code compare-virtual-threads=true} выполняет два прогона: с профилем virtual-threads и без него;</li>
+     *     <li>{@code app.*} — любые свойства приложения, например {@code app.server.tomcat.threads.max=50};</li>
+     *     <li>{@code report} — файл, в который записывается отчёт.</li>
+     * </ul>
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String option = arg.startsWith("--") ? arg.substring(2) : arg;
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Ожидался аргумент вида имя=значение: " + arg);
+            }
+            options.put(option.substring(0, separator), option.substring(separator + 1));
+        }
+        String profiles = options.getOrDefault("profiles", "");
+        List<String> runs = Boolean.parseBoolean(options.get("compare-virtual-threads"))
+                ? List.of(profiles, profiles.isEmpty() ? "virtual-threads" : profiles + ",virtual-threads")
+                : List.of(profiles);
+        StringBuilder report = new StringBuilder();
+        for (String runProfiles : runs) {
+            report.append(run(options, runProfiles)).append('\n');
+        }
+        log.info("Результаты нагрузочного прогона:\n{}", report);
+        String reportFile = options.get("report");
+        if (reportFile != null) {
+            Files.writeString(Path.of(reportFile), report, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String run(Map<String, String> options, String profiles) {
+        String url = options.getOrDefault("url",
+                "jdbc:h2:mem:load" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        if (Boolean.parseBoolean(options.getOrDefault("generate", "true"))) {
+            DatasetGenerator.populate(new DriverManagerDataSource(url, "sa", "password"), new DatasetGenerator.Spec(
+                    Integer.parseInt(options.getOrDefault("users", "100000")),
+                    Integer.parseInt(options.getOrDefault("films", "20000")),
+                    Integer.parseInt(options.getOrDefault("likes-per-user", "20")),
+                    Integer.parseInt(options.getOrDefault("friends-per-user", "10")),
+                    Long.parseLong(options.getOrDefault("seed", "42"))));
+        }
+
+        // Свойства передаются как аргументы командной строки, чтобы перекрыть application.properties;
+        // schema.sql пересоздаёт таблицы, поэтому инициализация БД отключается
+        List<String> arguments = new ArrayList<>(List.of("--server.port=0", "--spring.datasource.url=" + url,
+                "--spring.sql.init.mode=never"));
+        options.forEach((name, value) -> {
+            if (name.startsWith("app.")) {
+                arguments.add("--" + name.substring("app.".length()) + "=" + value);
+            }
+        });
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(FilmorateApplication.class);
+        if (!profiles.isEmpty()) {
+            builder.profiles(profiles.split(","));
+        }
+        try (ConfigurableApplicationContext context = builder.run(arguments.toArray(String[]::new))) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            int users = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM users", Integer.class);
+            int films = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM films", Integer.class);
+            if (users < 2 || films < 1) {
+                throw new IllegalStateException("В БД " + url + " нет данных для нагрузки");
+            }
+            Map<Endpoint, Integer> mix = new LinkedHashMap<>();
+            for (String entry : options.getOrDefault("mix", DEFAULT_MIX).split(",")) {
+                String[] parts = entry.trim().split(":");
+                Endpoint endpoint = ENDPOINTS.get(parts[0]);
+                if (endpoint == null) {
+                    throw new IllegalArgumentException("Неизвестный эндпоинт " + parts[0] + ", доступны " +
+                            ENDPOINTS.keySet());
+                }
+                mix.put(endpoint, parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+            }
+            Schedule schedule = new Schedule(URI.create("http://localhost:" + port), mix, users, films,
+                    Double.parseDouble(options.getOrDefault("rate", "500")),
+                    Long.parseLong(options.getOrDefault("seed", "42")));
+
+            Duration warmup = Duration.parse(options.getOrDefault("warmup", "PT10S"));
+            Duration duration = Duration.parse(options.getOrDefault("duration", "PT30S"));
+            log.info("Прогрев {} при {} запросах в секунду", warmup, schedule.rate);
+            schedule.drive(warmup);
+            log.info("Замер {} при {} запросах в секунду", duration, schedule.rate);
+            Result result = schedule.drive(duration);
+            return result.format("Профили: " + (profiles.isEmpty() ? "default" : profiles) + ", БД: " + url +
+                    ", пользователей: " + users + ", фильмов: " + films);
+        }
+    }
+
+    private static final class Schedule {
+        private final URI base;
+        private final Endpoint[] endpoints;
+        private final int[] cumulativeWeights;
+        private final int users;
+        private final int films;
+        private final double rate;
+        private final SplittableRandom random;
+        private final HttpClient client;
+
+        private Schedule(URI base, Map<Endpoint, Integer> mix, int users, int films, double rate, long seed) {
+            this.base = base;
+            this.endpoints = mix.keySet().toArray(Endpoint[]::new);
+            this.cumulativeWeights = new int[endpoints.length];
+            int total = 0;
+            for (int i = 0; i < endpoints.length; i++) {
+                total += mix.get(endpoints[i]);
+                cumulativeWeights[i] = total;
+            }
+            this.users = users;
+            this.films = films;
+            this.rate = rate;
+            this.random = new SplittableRandom(seed);
+            this.client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(REQUEST_TIMEOUT)
+                    .build();
+        }
+
+        // Запросы уходят в заранее рассчитанные моменты, каждый в своём виртуальном потоке
+        private Result drive(Duration duration) {
+            Result result = new Result(endpoints, duration);
+            long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            long start = System.nanoTime();
+            long end = start + duration.toNanos();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (long intended = start; intended < end; intended += intervalNanos) {
+                    long delay;
+                    while ((delay = intended - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(delay);
+                    }
+                    int endpoint = pick();
+                    HttpRequest request = endpoints[endpoint].factory()
+                            .create(base, random, users, films)
+                            .timeout(REQUEST_TIMEOUT)
+                            .build();
+                    long scheduledAt = intended;
+                    executor.execute(() -> send(result, endpoint, request, scheduledAt));
+                }
+            }
+            return result;
+        }
+
+        private void send(Result result, int endpoint, HttpRequest request, long scheduledAt) {
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                result.record(endpoint, System.nanoTime() - scheduledAt, response.statusCode() < 400);
+            } catch (IOException e) {
+                result.record(endpoint, System.nanoTime() - scheduledAt, false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.record(endpoint, System.nanoTime() - scheduledAt, false);
+            }
+        }
+
+        private int pick() {
+            int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (value < cumulativeWeights[i]) {
+                    return i;
+                }
+            }
+            throw new IllegalStateException("Вес вне диапазона: " + value);
+        }
+    }
+
+    private static final class Result {
+        private final Endpoint[] endpoints;
+        private final Duration duration;
+        private final Histogram[] latencies;
+        private final Histogram[] errorLatencies;
+
+        private Result(Endpoint[] endpoints, Duration duration) {
+            this.endpoints = endpoints;
+            this.duration = duration;
+            this.latencies = new Histogram[endpoints.length];
+            this.errorLatencies = new Histogram[endpoints.length];
+            for (int i = 0; i < endpoints.length; i++) {
+                latencies[i] = new ConcurrentHistogram(3);
+                errorLatencies[i] = new ConcurrentHistogram(3);
+            }
+        }
+
+        private void record(int endpoint, long latencyNanos, boolean success) {
+            long latencyMicros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+            latencies[endpoint].recordValue(latencyMicros);
+            if (!success) {
+                errorLatencies[endpoint].recordValue(latencyMicros);
+            }
+        }
+
+        private String format(String title) {
+            StringBuilder report = new StringBuilder(title).append('\n');
+            report.append(header());
+            Histogram total = new Histogram(3);
+            Histogram totalErrors = new Histogram(3);
+            for (int i = 0; i < endpoints.length; i++) {
+                report.append(line(endpoints[i].name(), latencies[i], errorLatencies[i].getTotalCount()));
+                total.add(latencies[i]);
+                totalErrors.add(errorLatencies[i]);
+            }
+            report.append(line("total", total, totalErrors.getTotalCount()));
+            if (totalErrors.getTotalCount() > 0) {
+                report.append("Задержки неудачных запросов\n").append(header());
+                for (int i = 0; i < endpoints.length; i++) {
+                    if (errorLatencies[i].getTotalCount() > 0) {
+                        report.append(line(endpoints[i].name(), errorLatencies[i], errorLatencies[i].getTotalCount()));
+                    }
+                }
+                report.append(line("total", totalErrors, totalErrors.getTotalCount()));
+            }
+            return report.toString();
+        }
+
+        private static String header() {
+            return String.format("%-24s %10s %8s %10s %10s %10s %10s %10s%n", "endpoint", "requests",
+                    "errors", "req/s", "p50, ms", "p99, ms", "p999, ms", "max, ms");
+        }
+
+        private String line(String name, Histogram histogram, long errorCount) {
+            return String.format("%-24s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", name,
+                    histogram.getTotalCount(), errorCount,
+                    histogram.getTotalCount() / (duration.toNanos() / 1e9),
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxValue() / 1000.0);
+        }
+    }
+
+    private static HttpRequest.Builder get(URI base, String path) {
+        return HttpRequest.newBuilder(base.resolve(path)).GET();
+    }
+
+    private static int id(SplittableRandom random, int max) {
+        return 1 + random.nextInt(max);
+    }
+
+    private static Map<String, Endpoint> endpoints(Endpoint... endpoints) {
+        Map<String, Endpoint> byName = new LinkedHashMap<>();
+        for (Endpoint endpoint : endpoints) {
+            byName.put(endpoint.name(), endpoint);
+        }
+        return byName;
+    }
+}
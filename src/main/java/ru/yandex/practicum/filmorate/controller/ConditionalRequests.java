@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.web.context.request.WebRequest;
+import ru.yandex.practicum.filmorate.model.EntityVersion;
+
+/**
+ * Проверка условных GET-запросов по версии данных. Если клиент прислал совпадающий If-None-Match
+ * или If-Modified-Since, ответ 304 выставляется здесь, и обработчик возвращает null, не загружая данные.
+ * Версии в памяти и в пересоздаваемой при старте схеме начинаются заново, поэтому в ETag есть метка запуска.
+ */
+final class ConditionalRequests {
+    private static final String STARTUP = Long.toString(System.currentTimeMillis(), 36);
+
+    private ConditionalRequests() {
+    }
+
+    static boolean isNotModified(WebRequest request, EntityVersion version) {
+        return request.checkNotModified(eTag(version.version()), version.updatedAt().toEpochMilli());
+    }
+
+    static boolean isNotModified(WebRequest request, long version) {
+        return request.checkNotModified(eTag(version));
+    }
+
+    private static String eTag(long version) {
+        return STARTUP + "-" + version;
+    }
+}
@@ -2,10 +2,16 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.BulkImportResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.BulkImportService;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import jakarta.validation.Valid;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
@@ -13,28 +19,53 @@ import java.util.List;
 @Slf4j
 @RequiredArgsConstructor
 public class FilmController {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
     private final FilmService filmService;
+    private final NdjsonStreamWriter ndjsonStreamWriter;
+    private final BulkImportService bulkImportService;
 
     @PostMapping
     public Film createFilm(@Valid @RequestBody Film film) {
-        log.info("Добавлен фильм: {}", film);
-        return filmService.create(film);
+        Film created = filmService.create(film);
+        log.info("Добавлен фильм с ID {}: {}", created.getId(), created.getName());
+        return created;
+    }
+
+    @PostMapping("/bulk")
+    public BulkImportResult importFilms(InputStream body) {
+        log.info("Запрошена массовая загрузка фильмов");
+        return bulkImportService.importFilms(body);
     }
 
     @PutMapping
     public Film updateFilm(@Valid @RequestBody Film film) {
-        log.info("Обновлен фильм: {}", film);
+        log.info("Обновлен фильм с ID {}", film.getId());
         return filmService.update(film);
     }
 
     @GetMapping
-    public List<Film> getAllFilms() {
-        return filmService.getAll();
+    public List<Film> getAllFilms(@RequestParam(required = false) Integer after,
+                                 @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return filmService.getAll();
+        }
+        log.info("Запрошена страница фильмов после ID {} размером {}", after, limit);
+        return filmService.getPage(after == null ? 0 : after, limit == null ? DEFAULT_PAGE_SIZE : limit);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamFilms() {
+        log.info("Запрошена потоковая выгрузка фильмов");
+        return ndjsonStreamWriter.stream(filmService::streamAll);
     }
 
     @GetMapping("/{id}")
-    public Film getFilmById(@PathVariable int id) {
+    public Film getFilmById(@PathVariable int id, WebRequest request) {
         log.info("Получен запрос на фильм с ID: {}", id);
+        if (ConditionalRequests.isNotModified(request, filmService.getFilmVersion(id))) {
+            return null;
+        }
         return filmService.getFilmById(id);
     }
 
@@ -44,6 +75,14 @@ public class FilmController {
         filmService.addLike(id, userId);
     }
 
+    @GetMapping("/{id}/likes")
+    public int[] getLikes(@PathVariable int id,
+                          @RequestParam(defaultValue = "0") int after,
+                          @RequestParam(defaultValue = "100") int limit) {
+        log.info("Запрошены лайки фильма {} после пользователя {}", id, after);
+        return filmService.getLikes(id, after, limit);
+    }
+
     @DeleteMapping("/{id}/like/{userId}")
     public void removeLike(@PathVariable int id, @PathVariable int userId) {
         log.info("Пользователь {} удалил лайк с фильма {}", userId, id);
@@ -51,8 +90,22 @@ public class FilmController {
     }
 
     @GetMapping("/popular")
-    public List<Film> getPopularFilms(@RequestParam(defaultValue = "10") int count) {
-        log.info("Запрошено {} популярных фильмов", count);
-        return filmService.getPopularFilms(count);
+    public List<Film> getPopularFilms(@RequestParam(defaultValue = "10") int count,
+                                      @RequestParam(required = false) Integer genreId,
+                                      @RequestParam(required = false) Integer mpaId,
+                                      @RequestParam(required = false) Integer year,
+                                      WebRequest request) {
+        log.info("Запрошено {} популярных фильмов, жанр {}, MPA {}, год {}", count, genreId, mpaId, year);
+        if (ConditionalRequests.isNotModified(request, filmService.getPopularityEpoch())) {
+            return null;
+        }
+        return filmService.getPopularFilms(count, genreId, mpaId, year);
+    }
+
+    @GetMapping("/search")
+    public List<Film> searchFilms(@RequestParam String q,
+                                  @RequestParam(defaultValue = "20") int limit) {
+        log.info("Поиск фильмов по запросу '{}'", q);
+        return filmService.search(q, limit);
     }
-}
\ No newline at end of file
+}
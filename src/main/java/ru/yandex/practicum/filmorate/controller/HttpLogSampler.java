@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.zalando.logbook.HttpRequest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Условие Logbook: какая доля HTTP-запросов попадает в лог. Берётся доля первого подходящего шаблона пути
+ * из filmorate.logging.http.sample-rates (формат "шаблон:доля" через запятую), иначе доля по умолчанию.
+ * Запросы вне выборки Logbook не буферизует и не форматирует, ошибки по ним пишет {@link ErrorHandler}.
+ */
+@Component("requestCondition")
+public class HttpLogSampler implements Predicate<HttpRequest> {
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final Map<String, Double> sampleRates = new LinkedHashMap<>();
+    private final double defaultSampleRate;
+
+    public HttpLogSampler(@Value("${filmorate.logging.http.sample-rate}") double defaultSampleRate,
+                          @Value("${filmorate.logging.http.sample-rates:}") String sampleRates) {
+        this.defaultSampleRate = defaultSampleRate;
+        Arrays.stream(sampleRates.split(","))
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .forEach(entry -> {
+                    int separator = entry.lastIndexOf(':');
+                    if (separator < 0) {
+                        throw new IllegalArgumentException("Ожидается шаблон:доля, получено " + entry);
+                    }
+                    this.sampleRates.put(entry.substring(0, separator).trim(),
+                            Double.parseDouble(entry.substring(separator + 1).trim()));
+                });
+    }
+
+    @Override
+    public boolean test(HttpRequest request) {
+        double rate = getSampleRate(request.getPath());
+        return rate >= 1 || rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    double getSampleRate(String path) {
+        for (Map.Entry<String, Double> entry : sampleRates.entrySet()) {
+            if (pathMatcher.match(entry.getKey(), path)) {
+                return entry.getValue();
+            }
+        }
+        return defaultSampleRate;
+    }
+}
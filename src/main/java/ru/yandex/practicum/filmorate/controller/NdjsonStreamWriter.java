@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Пишет объекты в ответ в формате NDJSON по мере их чтения из хранилища, не собирая их в список.
+ */
+@Component
+public class NdjsonStreamWriter {
+    private final ObjectWriter objectWriter;
+
+    public NdjsonStreamWriter(ObjectMapper objectMapper) {
+        this.objectWriter = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    public <T> StreamingResponseBody stream(Consumer<Consumer<T>> source) {
+        return out -> source.accept(item -> {
+            try {
+                objectWriter.writeValue(out, item);
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
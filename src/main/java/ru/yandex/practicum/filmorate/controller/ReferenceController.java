@@ -6,10 +6,10 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MpaRating;
-import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
-import ru.yandex.practicum.filmorate.storage.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReferenceDataRegistry;
 
 import java.util.List;
 
@@ -18,30 +18,35 @@ import java.util.List;
 @Slf4j
 @RequiredArgsConstructor
 public class ReferenceController {
-    private final GenreDbStorage genreDbStorage;
-    private final MpaDbStorage mpaDbStorage;
+    private final ReferenceDataRegistry referenceData;
 
     @GetMapping("/genres")
-    public List<Genre> getAllGenres() {
+    public List<Genre> getAllGenres(WebRequest request) {
         log.info("Запрошен список всех жанров");
-        return genreDbStorage.getAll();
+        if (ConditionalRequests.isNotModified(request, referenceData.getVersion())) {
+            return null;
+        }
+        return referenceData.getGenres();
     }
 
     @GetMapping("/genres/{id}")
     public Genre getGenreById(@PathVariable int id) {
         log.info("Запрошен жанр с ID: {}", id);
-        return genreDbStorage.getById(id);
+        return referenceData.getGenre(id);
     }
 
     @GetMapping("/mpa")
-    public List<MpaRating> getAllMpaRatings() {
+    public List<MpaRating> getAllMpaRatings(WebRequest request) {
         log.info("Запрошен список всех рейтингов MPA");
-        return mpaDbStorage.getAll();
+        if (ConditionalRequests.isNotModified(request, referenceData.getVersion())) {
+            return null;
+        }
+        return referenceData.getMpaRatings();
     }
 
     @GetMapping("/mpa/{id}")
     public MpaRating getMpaRatingById(@PathVariable int id) {
         log.info("Запрошен рейтинг MPA с ID: {}", id);
-        return mpaDbStorage.getById(id);
+        return referenceData.getMpa(id);
     }
 }
\ No newline at end of file
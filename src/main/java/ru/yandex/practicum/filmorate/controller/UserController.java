@@ -2,11 +2,18 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.BulkImportResult;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.BulkImportService;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
-import ru.yandex.practicum.filmorate.storage.FriendshipDbStorage;
 import jakarta.validation.Valid;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
@@ -14,29 +21,54 @@ import java.util.List;
 @Slf4j
 @RequiredArgsConstructor
 public class UserController {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
     private final UserService userService;
-    private final FriendshipDbStorage friendshipDbStorage;
+    private final FilmService filmService;
+    private final NdjsonStreamWriter ndjsonStreamWriter;
+    private final BulkImportService bulkImportService;
 
     @PostMapping
     public User createUser(@Valid @RequestBody User user) {
-        log.info("Добавлен пользователь: {}", user);
-        return userService.create(user);
+        User created = userService.create(user);
+        log.info("Добавлен пользователь с ID {}: {}", created.getId(), created.getLogin());
+        return created;
+    }
+
+    @PostMapping("/bulk")
+    public BulkImportResult importUsers(InputStream body) {
+        log.info("Запрошена массовая загрузка пользователей");
+        return bulkImportService.importUsers(body);
     }
 
     @PutMapping
     public User updateUser(@Valid @RequestBody User user) {
-        log.info("Обновлен пользователь: {}", user);
+        log.info("Обновлен пользователь с ID {}", user.getId());
         return userService.update(user);
     }
 
     @GetMapping
-    public List<User> getAllUsers() {
-        return userService.getAll();
+    public List<User> getAllUsers(@RequestParam(required = false) Integer after,
+                                  @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return userService.getAll();
+        }
+        log.info("Запрошена страница пользователей после ID {} размером {}", after, limit);
+        return userService.getPage(after == null ? 0 : after, limit == null ? DEFAULT_PAGE_SIZE : limit);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamUsers() {
+        log.info("Запрошена потоковая выгрузка пользователей");
+        return ndjsonStreamWriter.stream(userService::streamAll);
     }
 
     @GetMapping("/{id}")
-    public User getUserById(@PathVariable int id) {
+    public User getUserById(@PathVariable int id, WebRequest request) {
         log.info("Получен запрос на пользователя с ID: {}", id);
+        if (ConditionalRequests.isNotModified(request, userService.getUserVersion(id))) {
+            return null;
+        }
         return userService.getUserById(id);
     }
 
@@ -49,7 +81,7 @@ public class UserController {
     @PutMapping("/{id}/friends/{friendId}/confirm")
     public void confirmFriend(@PathVariable int id, @PathVariable int friendId) {
         log.info("Пользователь {} подтвердил дружбу с {}", id, friendId);
-        friendshipDbStorage.confirmFriendship(id, friendId);
+        userService.confirmFriend(id, friendId);
     }
 
     @DeleteMapping("/{id}/friends/{friendId}")
@@ -64,6 +96,21 @@ public class UserController {
         return userService.getFriends(id);
     }
 
+    @GetMapping("/{id}/friends/suggestions")
+    public List<User> getFriendsOfFriends(@PathVariable int id,
+                                          @RequestParam(defaultValue = "0") int after,
+                                          @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        log.info("Запрос друзей друзей пользователя {} после ID {} размером {}", id, after, limit);
+        return userService.getFriendsOfFriends(id, after, limit);
+    }
+
+    @GetMapping("/{id}/friends/recommendations")
+    public List<User> getFriendRecommendations(@PathVariable int id,
+                                               @RequestParam(defaultValue = "10") int limit) {
+        log.info("Запрос рекомендаций друзей для пользователя {}", id);
+        return userService.getFriendRecommendations(id, limit);
+    }
+
     @GetMapping("/{id}/friends/common/{otherId}")
     public List<User> getCommonFriends(
             @PathVariable int id,
@@ -71,4 +118,11 @@ public class UserController {
         log.info("Поиск общих друзей пользователей {} и {}", id, otherId);
         return userService.getCommonFriends(id, otherId);
     }
-}
\ No newline at end of file
+
+    @GetMapping("/{id}/recommendations")
+    public List<Film> getFilmRecommendations(@PathVariable int id,
+                                             @RequestParam(defaultValue = "10") int limit) {
+        log.info("Запрос рекомендаций фильмов для пользователя {}", id);
+        return filmService.getFilmRecommendations(id, limit);
+    }
+}
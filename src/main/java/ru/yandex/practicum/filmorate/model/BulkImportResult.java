@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.List;
+
+public record BulkImportResult(int total, int created, int failed, List<ItemResult> items) {
+
+    public record ItemResult(int index, Integer id, String error) {
+    }
+}
@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.time.Instant;
+
+/**
+ * Версия строки фильма или пользователя: растёт при каждом изменении самой сущности, её лайков или друзей.
+ */
+public record EntityVersion(long version, Instant updatedAt) {
+}
@@ -1,21 +1,35 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import ru.yandex.practicum.filmorate.validator.ValidReleaseDate;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 @Data
 public class Film {
     private Integer id;
-    private Set<Integer> likes = new HashSet<>();
+
+    // Счётчик ведёт хранилище, значение из запроса клиента игнорируется
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private int likeCount;
+
     private List<Genre> genres = new ArrayList<>();
     private MpaRating mpa;
 
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private long version;
+
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private Instant updatedAt;
+
     @NotBlank(message = "Название не может быть пустым")
     private String name;
 
@@ -1,13 +1,24 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.validation.constraints.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import java.time.Instant;
 import java.time.LocalDate;
 
 @Data
 public class User {
     private Integer id;
 
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private long version;
+
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private Instant updatedAt;
+
     @NotBlank(message = "Email не может быть пустым")
     @Email(message = "Некорректный формат email")
     private String email;
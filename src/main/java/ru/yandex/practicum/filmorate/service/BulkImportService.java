@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.BulkImportResult;
+import ru.yandex.practicum.filmorate.model.BulkImportResult.ItemResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Массовая загрузка фильмов и пользователей из JSON-массива.
+ * Массив читается потоково, элементы проверяются по одному и вставляются пакетами,
+ * каждый пакет в своей транзакции. Если пакет не удалось вставить целиком,
+ * его элементы вставляются по одному, чтобы ошибка попала только в результат виноватого элемента.
+ * Если JSON обрывается после уже вставленных пакетов, возвращается результат по прочитанным элементам
+ * с ошибкой разбора, а недочитанный пакет не вставляется.
+ */
+@Service
+@Slf4j
+public class BulkImportService {
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final FilmService filmService;
+    private final UserService userService;
+    private final int chunkSize;
+
+    public BulkImportService(ObjectMapper objectMapper,
+                             Validator validator,
+                             FilmService filmService,
+                             UserService userService,
+                             @Value("${filmorate.bulk.chunk-size}") int chunkSize) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.filmService = filmService;
+        this.userService = userService;
+        this.chunkSize = chunkSize;
+    }
+
+    public BulkImportResult importFilms(InputStream body) {
+        return importAll(body, Film.class, film -> {
+            if (film.getMpa() == null) {
+                throw new ValidationException("mpa: Рейтинг MPA обязателен");
+            }
+            filmService.validateMpaAndGenres(film);
+        }, filmService::createAll, filmService::create, Film::getId);
+    }
+
+    public BulkImportResult importUsers(InputStream body) {
+        return importAll(body, User.class, user -> {
+        }, userService::createAll, userService::create, User::getId);
+    }
+
+    private <T> BulkImportResult importAll(InputStream body,
+                                           Class<T> type,
+                                           Consumer<T> referenceValidator,
+                                           Function<List<T>, List<T>> batchCreator,
+                                           UnaryOperator<T> singleCreator,
+                                           ToIntFunction<T> idGetter) {
+        List<ItemResult> results = new ArrayList<>();
+        List<Integer> chunkIndexes = new ArrayList<>(chunkSize);
+        List<T> chunk = new ArrayList<>(chunkSize);
+        int index = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new ValidationException("Ожидается JSON-массив");
+            }
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                JsonNode node = parser.readValueAsTree();
+                try {
+                    T item = objectMapper.treeToValue(node, type);
+                    validate(item);
+                    referenceValidator.accept(item);
+                    chunk.add(item);
+                    chunkIndexes.add(index);
+                } catch (IOException | RuntimeException e) {
+                    results.add(new ItemResult(index, null, e.getMessage()));
+                }
+                index++;
+                if (chunk.size() >= chunkSize) {
+                    flush(chunk, chunkIndexes, batchCreator, singleCreator, idGetter, results);
+                }
+            }
+            flush(chunk, chunkIndexes, batchCreator, singleCreator, idGetter, results);
+        } catch (IOException e) {
+            if (results.stream().noneMatch(result -> result.id() != null)) {
+                throw new ValidationException("Некорректный JSON: " + e.getMessage());
+            }
+            // Уже вставленные пакеты остаются, а недочитанный пакет не вставляется: клиент получает
+            // результат по каждому элементу и может повторить загрузку начиная с места ошибки
+            String error = "Некорректный JSON: " + e.getMessage();
+            for (int chunkIndex : chunkIndexes) {
+                results.add(new ItemResult(chunkIndex, null, "Не загружен: " + error));
+            }
+            results.add(new ItemResult(index, null, error));
+        }
+
+        results.sort(Comparator.comparingInt(ItemResult::index));
+        int created = (int) results.stream().filter(result -> result.error() == null).count();
+        log.info("Загружено {} из {} элементов типа {}", created, results.size(), type.getSimpleName());
+        return new BulkImportResult(results.size(), created, results.size() - created, results);
+    }
+
+    private <T> void flush(List<T> chunk,
+                           List<Integer> chunkIndexes,
+                           Function<List<T>, List<T>> batchCreator,
+                           UnaryOperator<T> singleCreator,
+                           ToIntFunction<T> idGetter,
+                           List<ItemResult> results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            List<T> created = batchCreator.apply(chunk);
+            for (int i = 0; i < created.size(); i++) {
+                results.add(new ItemResult(chunkIndexes.get(i), idGetter.applyAsInt(created.get(i)), null));
+            }
+        } catch (DataAccessException e) {
+            log.warn("Пакет из {} элементов не вставлен, вставка по одному: {}", chunk.size(), e.getMessage());
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    T created = singleCreator.apply(chunk.get(i));
+                    results.add(new ItemResult(chunkIndexes.get(i), idGetter.applyAsInt(created), null));
+                } catch (RuntimeException itemException) {
+                    results.add(new ItemResult(chunkIndexes.get(i), null, itemException.getMessage()));
+                }
+            }
+        }
+        chunk.clear();
+        chunkIndexes.clear();
+    }
+
+    private <T> void validate(T item) {
+        Set<ConstraintViolation<T>> violations = validator.validate(item);
+        if (!violations.isEmpty()) {
+            throw new ValidationException(violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+        }
+    }
+}
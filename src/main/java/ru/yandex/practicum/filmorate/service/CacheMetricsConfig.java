@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.filmorate.storage.film.CachingFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.Optional;
+
+/**
+ * Метрики внутренних кэшей и очереди отложенной записи лайков. Время операций хранилищ и сервисов
+ * снимается аннотацией {@code @Timed} на самих классах.
+ */
+@Configuration
+public class CacheMetricsConfig {
+
+    @Bean
+    public MeterBinder filmorateCacheMetrics(@Qualifier("filmStorage") FilmStorage filmStorage,
+                                            FriendRecommender friendRecommender,
+                                            Optional<LikeWriteBehind> likeWriteBehind) {
+        return registry -> {
+            if (filmStorage instanceof CachingFilmStorage cachingFilmStorage) {
+                CaffeineCacheMetrics.monitor(registry, cachingFilmStorage.getCache(), "films");
+            }
+            CaffeineCacheMetrics.monitor(registry, friendRecommender.getCache(), "friend-recommendations");
+            likeWriteBehind.ifPresent(writeBehind -> Gauge.builder("filmorate.likes.write-behind.pending",
+                            writeBehind, LikeWriteBehind::pending)
+                    .description("Изменения лайков, ещё не записанные в БД")
+                    .register(registry));
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Рекомендации фильмов по схожести вкусов. Для пользователя находятся соседи с общими лайками,
+ * их схожесть считается по коэффициенту Жаккара, и непросмотренные фильмы соседей
+ * получают сумму схожестей тех, кому они понравились.
+ */
+@Component
+public class FilmRecommender {
+    public static final int MAX_RECOMMENDATIONS = 1000;
+
+    // Число наиболее похожих пользователей, чьи лайки участвуют в оценке
+    private static final int NEIGHBOURS = 100;
+    // Схожесть хранится в целочисленных счётчиках с фиксированной точностью
+    private static final int SIMILARITY_SCALE = 1 << 20;
+
+    private final LikeMatrix likeMatrix;
+
+    public FilmRecommender(LikeMatrix likeMatrix) {
+        this.likeMatrix = likeMatrix;
+    }
+
+    public int[] recommend(int userId, int limit) {
+        int[] likedFilms = likeMatrix.getFilms(userId);
+        if (likedFilms.length == 0) {
+            return SortedIntArrays.EMPTY;
+        }
+
+        IntCountMap overlaps = ParallelCounter.count(likedFilms, null, likeMatrix::getUsers,
+                SortedIntArrays.EMPTY, userId);
+        IntCountMap similarities = new IntCountMap(overlaps.size());
+        for (int neighbourId : overlaps.keys()) {
+            int overlap = overlaps.get(neighbourId);
+            int union = likedFilms.length + likeMatrix.getFilms(neighbourId).length - overlap;
+            similarities.add(neighbourId, Math.max(1, (int) ((long) overlap * SIMILARITY_SCALE / union)));
+        }
+
+        int[] neighbours = similarities.topKeys(NEIGHBOURS);
+        int[] weights = new int[neighbours.length];
+        for (int i = 0; i < neighbours.length; i++) {
+            weights[i] = similarities.get(neighbours[i]);
+        }
+        return ParallelCounter.count(neighbours, weights, likeMatrix::getFilms, likedFilms, 0)
+                .topKeys(limit);
+    }
+}
@@ -0,0 +1,136 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * Инвертированный индекс по словам из названия и описания фильмов.
+ * Каждое слово запроса ищется как префикс, фильм должен содержать все слова запроса.
+ * Совпадение в названии весит больше, чем в описании, точное совпадение слова — больше, чем по префиксу,
+ * а популярные фильмы получают надбавку по числу лайков.
+ */
+@Component
+@Slf4j
+public class FilmSearchIndex {
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final int NAME_EXACT_WEIGHT = 4000;
+    private static final int NAME_PREFIX_WEIGHT = 3000;
+    private static final int DESCRIPTION_EXACT_WEIGHT = 2000;
+    private static final int DESCRIPTION_PREFIX_WEIGHT = 1000;
+    private static final int LIKES_WEIGHT = 500;
+
+    private final FilmStorage filmStorage;
+    private final PopularityLeaderboard leaderboard;
+    private final NavigableMap<String, int[]> nameIndex = new ConcurrentSkipListMap<>();
+    private final NavigableMap<String, int[]> descriptionIndex = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Document> documents = new ConcurrentHashMap<>();
+
+    public FilmSearchIndex(@Qualifier("filmDbStorage") FilmStorage filmStorage, PopularityLeaderboard leaderboard) {
+        this.filmStorage = filmStorage;
+        this.leaderboard = leaderboard;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        nameIndex.clear();
+        descriptionIndex.clear();
+        documents.clear();
+        filmStorage.streamAll(this::putFilm);
+        log.info("Поисковый индекс построен: {} фильмов, {} слов в названиях, {} слов в описаниях",
+                documents.size(), nameIndex.size(), descriptionIndex.size());
+    }
+
+    // Обновление одного фильма выполняется под блокировкой его записи, чтобы параллельные правки не перемешали слова
+    public void putFilm(Film film) {
+        Document updated = new Document(tokenize(film.getName()), tokenize(film.getDescription()));
+        documents.compute(film.getId(), (id, previous) -> {
+            Document old = previous == null ? Document.EMPTY : previous;
+            reindex(nameIndex, id, old.nameTokens(), updated.nameTokens());
+            reindex(descriptionIndex, id, old.descriptionTokens(), updated.descriptionTokens());
+            return updated;
+        });
+    }
+
+    public int[] search(String query, int limit) {
+        Set<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return SortedIntArrays.EMPTY;
+        }
+        IntCountMap scores = null;
+        for (String term : terms) {
+            IntCountMap termScores = new IntCountMap(64);
+            collect(nameIndex, term, NAME_EXACT_WEIGHT, NAME_PREFIX_WEIGHT, termScores);
+            collect(descriptionIndex, term, DESCRIPTION_EXACT_WEIGHT, DESCRIPTION_PREFIX_WEIGHT, termScores);
+            scores = scores == null ? termScores : retainCommon(scores, termScores);
+            if (scores.size() == 0) {
+                return SortedIntArrays.EMPTY;
+            }
+        }
+        for (int filmId : scores.keys()) {
+            scores.add(filmId, (int) (LIKES_WEIGHT * Math.log1p(leaderboard.getLikes(filmId))));
+        }
+        return scores.topKeys(limit);
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT).replace('ё', 'е'))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    // Все слова индекса, начинающиеся с term, лежат между term и term + Character.MAX_VALUE
+    private static void collect(NavigableMap<String, int[]> index, String term, int exactWeight, int prefixWeight,
+                                IntCountMap termScores) {
+        for (Map.Entry<String, int[]> entry : index.subMap(term, true, term + Character.MAX_VALUE, false).entrySet()) {
+            int weight = entry.getKey().length() == term.length() ? exactWeight : prefixWeight;
+            for (int filmId : entry.getValue()) {
+                termScores.add(filmId, weight);
+            }
+        }
+    }
+
+    private static IntCountMap retainCommon(IntCountMap scores, IntCountMap termScores) {
+        IntCountMap common = new IntCountMap(Math.min(scores.size(), termScores.size()));
+        for (int filmId : scores.keys()) {
+            int termScore = termScores.get(filmId);
+            if (termScore > 0) {
+                common.add(filmId, scores.get(filmId) + termScore);
+            }
+        }
+        return common;
+    }
+
+    private static void reindex(NavigableMap<String, int[]> index, int filmId, Set<String> oldTokens,
+                                Set<String> newTokens) {
+        for (String token : oldTokens) {
+            if (!newTokens.contains(token)) {
+                index.computeIfPresent(token, (key, ids) -> SortedIntArrays.delete(ids, filmId));
+            }
+        }
+        for (String token : newTokens) {
+            if (!oldTokens.contains(token)) {
+                index.compute(token, (key, ids) -> SortedIntArrays.insert(ids, filmId));
+            }
+        }
+    }
+
+    private record Document(Set<String> nameTokens, Set<String> descriptionTokens) {
+        static final Document EMPTY = new Document(Set.of(), Set.of());
+    }
+}
@@ -1,74 +1,214 @@
 package ru.yandex.practicum.filmorate.service;
 
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.EntityVersion;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeChange;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
-import ru.yandex.practicum.filmorate.storage.MpaDbStorage;
-import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReferenceDataRegistry;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
+@Timed("filmorate.service")
 @Service
 public class FilmService {
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int LIKE_LOCK_STRIPES = 64;
+
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
-    private final MpaDbStorage mpaRatingDao;
-    private final GenreDbStorage genreDao;
+    private final ReferenceDataRegistry referenceData;
+    private final PopularityLeaderboard leaderboard;
+    private final LikeMatrix likeMatrix;
+    private final FilmRecommender filmRecommender;
+    private final FilmSearchIndex searchIndex;
+    private final LikeWriteBehind likeWriteBehind;
+    // Запись лайка в БД, матрицу и рейтинг идёт под одной блокировкой пользователя: иначе матрица может
+    // применить одновременные добавление и удаление в порядке, обратном порядку их фиксации в БД
+    private final ReentrantLock[] likeLocks = new ReentrantLock[LIKE_LOCK_STRIPES];
 
-    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+    public FilmService(@Qualifier("filmStorage") FilmStorage filmStorage,
                        @Qualifier("userDbStorage") UserStorage userStorage,
-                       MpaDbStorage mpaDbStorage,
-                       GenreDbStorage genreDbStorage) {
+                       ReferenceDataRegistry referenceData,
+                       PopularityLeaderboard leaderboard,
+                       LikeMatrix likeMatrix,
+                       FilmRecommender filmRecommender,
+                       FilmSearchIndex searchIndex,
+                       Optional<LikeWriteBehind> likeWriteBehind) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
-        this.mpaRatingDao = mpaDbStorage;
-        this.genreDao = genreDbStorage;
+        this.referenceData = referenceData;
+        this.leaderboard = leaderboard;
+        this.likeMatrix = likeMatrix;
+        this.filmRecommender = filmRecommender;
+        this.searchIndex = searchIndex;
+        this.likeWriteBehind = likeWriteBehind.orElse(null);
+        for (int i = 0; i < LIKE_LOCK_STRIPES; i++) {
+            likeLocks[i] = new ReentrantLock();
+        }
     }
 
     public Film create(Film film) {
         validateMpaAndGenres(film);
-        return filmStorage.create(film);
+        Film created = filmStorage.create(film);
+        leaderboard.putFilm(created);
+        searchIndex.putFilm(created);
+        return created;
+    }
+
+    // Ссылки на жанры и MPA проверяются вызывающей стороной до формирования пакета
+    public List<Film> createAll(List<Film> films) {
+        List<Film> created = filmStorage.createAll(films);
+        for (Film film : created) {
+            leaderboard.putFilm(film);
+            searchIndex.putFilm(film);
+        }
+        return created;
     }
 
     public Film update(Film film) {
         validateMpaAndGenres(film);
-        return filmStorage.update(film);
+        Film updated = filmStorage.update(film);
+        leaderboard.putFilm(updated);
+        searchIndex.putFilm(updated);
+        return updated;
     }
 
     public List<Film> getAll() {
         return filmStorage.getAll();
     }
 
+    public List<Film> getPage(int afterId, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        return filmStorage.getPage(afterId, limit);
+    }
+
+    public void streamAll(Consumer<Film> consumer) {
+        filmStorage.streamAll(consumer);
+    }
+
     public Film getFilmById(int id) {
         return filmStorage.getFilmById(id);
     }
 
+    public EntityVersion getFilmVersion(int id) {
+        return filmStorage.getVersion(id);
+    }
+
     public void addLike(int filmId, int userId) {
-        filmStorage.getFilmById(filmId);
+        filmStorage.getVersion(filmId);
         userStorage.getUserById(userId);
-        filmStorage.addLike(filmId, userId);
+        if (likeWriteBehind != null) {
+            enqueueLike(new LikeChange(filmId, userId, true));
+            return;
+        }
+        ReentrantLock lock = likeLock(userId);
+        lock.lock();
+        try {
+            if (filmStorage.addLike(filmId, userId)) {
+                leaderboard.increment(filmId);
+                likeMatrix.addLike(filmId, userId);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void removeLike(int filmId, int userId) {
-        filmStorage.getFilmById(filmId);
+        filmStorage.getVersion(filmId);
         userStorage.getUserById(userId);
-        filmStorage.removeLike(filmId, userId);
+        if (likeWriteBehind != null) {
+            enqueueLike(new LikeChange(filmId, userId, false));
+            return;
+        }
+        ReentrantLock lock = likeLock(userId);
+        lock.lock();
+        try {
+            if (filmStorage.removeLike(filmId, userId)) {
+                leaderboard.decrement(filmId);
+                likeMatrix.removeLike(filmId, userId);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public List<Film> getPopularFilms(int count) {
-        return filmStorage.getPopularFilms(count);
+    // В режиме отложенной записи источником истины для лайков служит матрица в памяти: в очередь попадают
+    // только реально меняющие её операции, а рейтинг обновляется сразу, не дожидаясь записи в БД
+    private void enqueueLike(LikeChange change) {
+        likeWriteBehind.reserve();
+        boolean changed = change.added()
+                ? likeMatrix.addLike(change.filmId(), change.userId())
+                : likeMatrix.removeLike(change.filmId(), change.userId());
+        if (!changed) {
+            likeWriteBehind.release();
+            return;
+        }
+        if (change.added()) {
+            leaderboard.increment(change.filmId());
+        } else {
+            leaderboard.decrement(change.filmId());
+        }
+        likeWriteBehind.submit(change);
+    }
+
+    public int[] getLikes(int filmId, int afterUserId, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        filmStorage.getFilmById(filmId);
+        return filmStorage.getLikes(filmId, afterUserId, limit);
+    }
+
+    public long getPopularityEpoch() {
+        return leaderboard.getEpoch();
+    }
+
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer mpaId, Integer year) {
+        return filmStorage.getFilmsByIds(leaderboard.getTop(count, genreId, mpaId, year));
     }
 
-    private void validateMpaAndGenres(Film film) {
+    public List<Film> search(String query, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        if (query == null || query.isBlank()) {
+            throw new ValidationException("Поисковый запрос не должен быть пустым");
+        }
+        int[] filmIds = searchIndex.search(query, limit);
+        return filmStorage.getFilmsByIds(Arrays.stream(filmIds).boxed().toList());
+    }
+
+    public List<Film> getFilmRecommendations(int userId, int limit) {
+        if (limit < 1 || limit > FilmRecommender.MAX_RECOMMENDATIONS) {
+            throw new ValidationException("Количество рекомендаций должно быть от 1 до "
+                    + FilmRecommender.MAX_RECOMMENDATIONS);
+        }
+        userStorage.getUserById(userId);
+        int[] filmIds = filmRecommender.recommend(userId, limit);
+        return filmStorage.getFilmsByIds(Arrays.stream(filmIds).boxed().toList());
+    }
+
+    public void validateMpaAndGenres(Film film) {
         if (film.getMpa() != null && film.getMpa().getId() != 0) {
-            mpaRatingDao.getById(film.getMpa().getId());
+            referenceData.getMpa(film.getMpa().getId());
         }
         if (film.getGenres() != null && !film.getGenres().isEmpty()) {
             for (Genre genre : film.getGenres()) {
-                genreDao.getById(genre.getId());
+                referenceData.getGenre(genre.getId());
             }
         }
     }
-}
\ No newline at end of file
+
+    private ReentrantLock likeLock(int userId) {
+        return likeLocks[userId & (LIKE_LOCK_STRIPES - 1)];
+    }
+}
@@ -0,0 +1,135 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.service.SortedIntArrays.IntList;
+import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Граф подтверждённых дружб в памяти: для каждого пользователя хранится отсортированный массив
+ * ID друзей и отдельно массив тех, у кого он сам в друзьях.
+ * Массивы не изменяются после публикации — каждое изменение создаёт новую копию,
+ * поэтому читатели работают без блокировок, а запись блокирует только одного пользователя.
+ * Изменения одной связи {@link UserService} применяет под блокировкой её владельца в том же порядке, что и в БД.
+ */
+@Component
+@Slf4j
+public class FriendGraphIndex {
+    private final FriendshipStorage friendshipStorage;
+    private final Map<Integer, int[]> friends = new ConcurrentHashMap<>();
+    private final Map<Integer, int[]> followers = new ConcurrentHashMap<>();
+
+    public FriendGraphIndex(FriendshipStorage friendshipStorage) {
+        this.friendshipStorage = friendshipStorage;
+    }
+
+    // Дружбы приходят отсортированными по user_id и friend_id, поэтому массивы друзей собираются без сортировки
+    @PostConstruct
+    public void rebuild() {
+        Map<Integer, int[]> loadedFriends = new HashMap<>();
+        Map<Integer, IntList> loadedFollowers = new HashMap<>();
+        IntList current = new IntList();
+        int[] currentUser = {-1};
+        friendshipStorage.streamConfirmed((userId, friendId) -> {
+            if (userId != currentUser[0]) {
+                if (!current.isEmpty()) {
+                    loadedFriends.put(currentUser[0], current.toArray());
+                }
+                current.clear();
+                currentUser[0] = userId;
+            }
+            current.add(friendId);
+            loadedFollowers.computeIfAbsent(friendId, id -> new IntList()).add(userId);
+        });
+        if (!current.isEmpty()) {
+            loadedFriends.put(currentUser[0], current.toArray());
+        }
+
+        friends.clear();
+        followers.clear();
+        friends.putAll(loadedFriends);
+        loadedFollowers.forEach((userId, list) -> followers.put(userId, list.toArray()));
+        log.info("Граф дружбы загружен: {} пользователей с друзьями", friends.size());
+    }
+
+    public void addFriend(int userId, int friendId) {
+        friends.compute(userId, (id, ids) -> SortedIntArrays.insert(ids, friendId));
+        followers.compute(friendId, (id, ids) -> SortedIntArrays.insert(ids, userId));
+    }
+
+    public void removeFriend(int userId, int friendId) {
+        friends.computeIfPresent(userId, (id, ids) -> SortedIntArrays.delete(ids, friendId));
+        followers.computeIfPresent(friendId, (id, ids) -> SortedIntArrays.delete(ids, userId));
+    }
+
+    public int[] getFriends(int userId) {
+        return friends.getOrDefault(userId, SortedIntArrays.EMPTY);
+    }
+
+    public int[] getFollowers(int userId) {
+        return followers.getOrDefault(userId, SortedIntArrays.EMPTY);
+    }
+
+    public int[] getCommonFriends(int userId, int otherId) {
+        return SortedIntArrays.intersect(getFriends(userId), getFriends(otherId));
+    }
+
+    // Друзья друзей, кроме самого пользователя и его прямых друзей: не больше limit с ID больше afterId.
+    // Отсортированные списки друзей сливаются по возрастанию начиная с afterId, и слияние останавливается
+    // на limit-м найденном ID, поэтому страница не требует обхода всех друзей друзей.
+    public int[] getFriendsOfFriends(int userId, int afterId, int limit) {
+        int[] direct = getFriends(userId);
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(Math.max(1, direct.length),
+                Comparator.comparingInt(Cursor::current));
+        for (int friendId : direct) {
+            int[] ids = getFriends(friendId);
+            int position = SortedIntArrays.firstAfter(ids, afterId);
+            if (position < ids.length) {
+                cursors.add(new Cursor(ids, position));
+            }
+        }
+        IntList result = new IntList();
+        int directPosition = SortedIntArrays.firstAfter(direct, afterId);
+        int previous = afterId;
+        while (!cursors.isEmpty() && result.size() < limit) {
+            Cursor cursor = cursors.poll();
+            int candidate = cursor.current();
+            if (candidate != previous) {
+                previous = candidate;
+                while (directPosition < direct.length && direct[directPosition] < candidate) {
+                    directPosition++;
+                }
+                boolean isDirect = directPosition < direct.length && direct[directPosition] == candidate;
+                if (candidate != userId && !isDirect) {
+                    result.add(candidate);
+                }
+            }
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        return result.toArray();
+    }
+
+    private static final class Cursor {
+        private final int[] ids;
+        private int position;
+
+        Cursor(int[] ids, int position) {
+            this.ids = ids;
+            this.position = position;
+        }
+
+        int current() {
+            return ids[position];
+        }
+
+        boolean advance() {
+            return ++position < ids.length;
+        }
+    }
+}
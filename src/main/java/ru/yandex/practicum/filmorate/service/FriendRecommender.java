@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Рекомендации «возможно, вы знакомы»: пользователи, не являющиеся друзьями,
+ * ранжированные по числу общих друзей. Обход друзей друзей делится между потоками ForkJoinPool,
+ * готовый рейтинг кэшируется для пользователя до изменения его графа.
+ */
+@Component
+public class FriendRecommender {
+    public static final int MAX_RECOMMENDATIONS = 1000;
+
+    private static final int INVALIDATION_STRIPES = 64;
+
+    private final FriendGraphIndex friendGraph;
+    private final Cache<Integer, int[]> cache;
+    private final AtomicLongArray invalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+
+    public FriendRecommender(FriendGraphIndex friendGraph,
+                             @Value("${filmorate.cache.recommendations.maximum-size}") long maximumSize) {
+        this.friendGraph = friendGraph;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    // Рейтинг считается вне блокировок кэша: ожидание ForkJoinPool не должно закреплять виртуальный поток
+    public int[] recommend(int userId, int limit) {
+        int[] ranking = cache.getIfPresent(userId);
+        if (ranking == null) {
+            int stripe = userId & (INVALIDATION_STRIPES - 1);
+            long stamp = invalidations.get(stripe);
+            int[] computed = rank(userId);
+            ranking = cache.asMap().compute(userId, (id, cached) ->
+                    cached != null || invalidations.get(stripe) != stamp ? cached : computed);
+            if (ranking == null) {
+                ranking = computed;
+            }
+        }
+        return ranking.length <= limit ? ranking : Arrays.copyOf(ranking, limit);
+    }
+
+    /**
+     * Рейтинг пользователя зависит от его друзей и их друзей, поэтому изменение дружбы userId
+     * сбрасывает рейтинг самого userId и всех, у кого он в друзьях.
+     */
+    public void invalidate(int userId) {
+        evict(userId);
+        for (int followerId : friendGraph.getFollowers(userId)) {
+            evict(followerId);
+        }
+    }
+
+    public Cache<Integer, int[]> getCache() {
+        return cache;
+    }
+
+    private void evict(int userId) {
+        invalidations.incrementAndGet(userId & (INVALIDATION_STRIPES - 1));
+        cache.invalidate(userId);
+    }
+
+    private int[] rank(int userId) {
+        int[] friends = friendGraph.getFriends(userId);
+        return ParallelCounter.count(friends, null, friendGraph::getFriends, friends, userId)
+                .topKeys(MAX_RECOMMENDATIONS);
+    }
+}
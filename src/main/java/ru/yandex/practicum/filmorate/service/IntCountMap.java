@@ -0,0 +1,112 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.Arrays;
+
+/**
+ * Счётчики по положительным int-ключам на открытой адресации, без упаковки в Integer.
+ * Ключ 0 обозначает пустую ячейку.
+ */
+final class IntCountMap {
+    private int[] keys;
+    private int[] counts;
+    private int size;
+
+    IntCountMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        keys = new int[capacity];
+        counts = new int[capacity];
+    }
+
+    void increment(int key) {
+        add(key, 1);
+    }
+
+    void add(int key, int delta) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                counts[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        counts[slot] = delta;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    void addAll(IntCountMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != 0) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    int get(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int key : keys) {
+            if (key != 0) {
+                result[n++] = key;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает не более limit ключей, упорядоченных по убыванию счётчика, при равенстве — по возрастанию ключа.
+     */
+    int[] topKeys(int limit) {
+        long[] packed = new long[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                packed[n++] = ((long) (Integer.MAX_VALUE - counts[i]) << 32) | keys[i];
+            }
+        }
+        Arrays.sort(packed);
+        int[] result = new int[Math.min(limit, size)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (int) packed[i];
+        }
+        return result;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                add(oldKeys[i], oldCounts[i]);
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Периодически сверяет счётчики лайков в таблице films с таблицей likes и исправляет расхождения.
+ * Рейтинг популярности мог загрузиться из неверного счётчика, поэтому исправленные фильмы получают
+ * в рейтинге то же число лайков, что записала сверка.
+ * При отложенной записи рейтинг опережает БД на ещё не записанные лайки, поэтому сверка ждёт,
+ * пока очередь опустеет.
+ */
+@Component
+@Slf4j
+public class LikeCountReconciler {
+    private final FilmStorage filmStorage;
+    private final PopularityLeaderboard leaderboard;
+    private final LikeWriteBehind likeWriteBehind;
+
+    public LikeCountReconciler(@Qualifier("filmStorage") FilmStorage filmStorage,
+                               PopularityLeaderboard leaderboard,
+                               Optional<LikeWriteBehind> likeWriteBehind) {
+        this.filmStorage = filmStorage;
+        this.leaderboard = leaderboard;
+        this.likeWriteBehind = likeWriteBehind.orElse(null);
+    }
+
+    @Scheduled(initialDelayString = "${filmorate.likes.reconcile-interval}",
+            fixedDelayString = "${filmorate.likes.reconcile-interval}")
+    public void reconcile() {
+        if (likeWriteBehind != null && likeWriteBehind.pending() > 0) {
+            log.debug("Сверка счётчиков лайков отложена: в очереди {} изменений", likeWriteBehind.pending());
+            return;
+        }
+        Map<Integer, Integer> repaired = filmStorage.reconcileLikeCounts();
+        if (repaired.isEmpty()) {
+            return;
+        }
+        repaired.forEach(leaderboard::setLikes);
+        log.warn("Исправлены счётчики лайков у {} фильмов", repaired.size());
+    }
+}
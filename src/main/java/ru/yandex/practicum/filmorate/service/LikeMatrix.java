@@ -0,0 +1,125 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.service.SortedIntArrays.IntList;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Разреженная матрица лайков «пользователь × фильм» в памяти: для каждого пользователя хранится
+ * отсортированный массив понравившихся фильмов, для каждого фильма — массив поставивших лайк пользователей.
+ * Массивы заменяются копиями при изменении, как в {@link FriendGraphIndex}.
+ * Обе стороны матрицы меняются под блокировкой группы пользователей, поэтому одновременные
+ * добавление и удаление одного лайка не расходятся между сторонами. Чтение идёт без блокировок.
+ */
+@Component
+@Slf4j
+public class LikeMatrix {
+    private static final int LOCK_STRIPES = 64;
+
+    private final FilmStorage filmStorage;
+    private final Map<Integer, int[]> filmsByUser = new ConcurrentHashMap<>();
+    private final Map<Integer, int[]> usersByFilm = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    public LikeMatrix(@Qualifier("filmDbStorage") FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    // Лайки приходят отсортированными по user_id, поэтому обе стороны матрицы собираются уже упорядоченными
+    @PostConstruct
+    public void rebuild() {
+        Map<Integer, int[]> loadedFilms = new HashMap<>();
+        Map<Integer, IntList> loadedUsers = new HashMap<>();
+        IntList current = new IntList();
+        int[] currentUser = {-1};
+        long[] likes = {0};
+        filmStorage.streamLikes((userId, filmId) -> {
+            if (userId != currentUser[0]) {
+                if (!current.isEmpty()) {
+                    loadedFilms.put(currentUser[0], current.toArray());
+                }
+                current.clear();
+                currentUser[0] = userId;
+            }
+            current.add(filmId);
+            loadedUsers.computeIfAbsent(filmId, id -> new IntList()).add(userId);
+            likes[0]++;
+        });
+        if (!current.isEmpty()) {
+            loadedFilms.put(currentUser[0], current.toArray());
+        }
+
+        filmsByUser.clear();
+        usersByFilm.clear();
+        filmsByUser.putAll(loadedFilms);
+        loadedUsers.forEach((filmId, list) -> usersByFilm.put(filmId, list.toArray()));
+        log.info("Матрица лайков загружена: {} лайков от {} пользователей", likes[0], filmsByUser.size());
+    }
+
+    // Возвращает false, если лайк уже был. Проверка и запись обеих сторон атомарны для пары «пользователь, фильм»
+    public boolean addLike(int filmId, int userId) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            boolean[] changed = {false};
+            filmsByUser.compute(userId, (id, ids) -> {
+                int[] updated = SortedIntArrays.insert(ids, filmId);
+                changed[0] = updated != ids;
+                return updated;
+            });
+            if (changed[0]) {
+                usersByFilm.compute(filmId, (id, ids) -> SortedIntArrays.insert(ids, userId));
+            }
+            return changed[0];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Возвращает false, если лайка не было
+    public boolean removeLike(int filmId, int userId) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            boolean[] changed = {false};
+            filmsByUser.computeIfPresent(userId, (id, ids) -> {
+                int[] updated = SortedIntArrays.delete(ids, filmId);
+                changed[0] = updated != ids;
+                return updated;
+            });
+            if (changed[0]) {
+                usersByFilm.computeIfPresent(filmId, (id, ids) -> SortedIntArrays.delete(ids, userId));
+            }
+            return changed[0];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean hasLike(int filmId, int userId) {
+        return SortedIntArrays.contains(getFilms(userId), filmId);
+    }
+
+    public int[] getFilms(int userId) {
+        return filmsByUser.getOrDefault(userId, SortedIntArrays.EMPTY);
+    }
+
+    public int[] getUsers(int filmId) {
+        return usersByFilm.getOrDefault(filmId, SortedIntArrays.EMPTY);
+    }
+
+    private ReentrantLock lockFor(int userId) {
+        return locks[userId & (LOCK_STRIPES - 1)];
+    }
+}
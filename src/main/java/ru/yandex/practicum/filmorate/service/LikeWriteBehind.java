@@ -0,0 +1,212 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.OverloadedException;
+import ru.yandex.practicum.filmorate.model.LikeChange;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Отложенная запись лайков. Запросы только ставят изменение в очередь, а фоновый поток
+ * забирает накопленное пакетами: по достижении размера пакета или по истечении задержки.
+ * Очередь говорит только о том, какие пары «фильм, пользователь» изменились: в БД пишется текущее
+ * состояние пары из {@link LikeMatrix}, поэтому порядок изменений в очереди не важен.
+ * Очередь ограничена: если места нет дольше offer-timeout, запрос получает 503.
+ * Пакет, который не удаётся записать по причине, не устраняемой повтором, после нескольких попыток
+ * делится пополам, пока виноватое изменение не останется одно; оно пишется в лог и отбрасывается.
+ * При недоступности БД пакет повторяется, пока запись не пройдёт.
+ * При остановке приложения очередь дописывается до конца.
+ */
+@Component
+@ConditionalOnProperty(value = "filmorate.likes.write-behind.enabled", havingValue = "true")
+@Slf4j
+public class LikeWriteBehind {
+    private static final long RETRY_PAUSE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final FilmStorage filmStorage;
+    private final LikeMatrix likeMatrix;
+    private final PopularityLeaderboard leaderboard;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final long offerTimeoutNanos;
+    private final Queue<LikeChange> queue = new ConcurrentLinkedQueue<>();
+    // Размер очереди ведётся отдельно: size() у ConcurrentLinkedQueue обходит весь список
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Semaphore capacity;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public LikeWriteBehind(@Qualifier("filmStorage") FilmStorage filmStorage,
+                           LikeMatrix likeMatrix,
+                           PopularityLeaderboard leaderboard,
+                           @Value("${filmorate.likes.write-behind.capacity}") int capacity,
+                           @Value("${filmorate.likes.write-behind.batch-size}") int batchSize,
+                           @Value("${filmorate.likes.write-behind.max-delay}") Duration maxDelay,
+                           @Value("${filmorate.likes.write-behind.offer-timeout}") Duration offerTimeout) {
+        this.filmStorage = filmStorage;
+        this.likeMatrix = likeMatrix;
+        this.leaderboard = leaderboard;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        this.capacity = new Semaphore(capacity);
+        this.writer = new Thread(this::writeLoop, "like-write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Резервирует место в очереди до изменения состояния в памяти, чтобы отказ не оставил его без записи в БД.
+     * Зарезервированное место нужно либо занять через {@link #submit}, либо вернуть через {@link #release}.
+     */
+    public void reserve() {
+        try {
+            if (!running || !capacity.tryAcquire(offerTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new OverloadedException("Очередь записи лайков переполнена, повторите запрос позже");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OverloadedException("Ожидание места в очереди лайков прервано");
+        }
+    }
+
+    public void release() {
+        capacity.release();
+    }
+
+    public void submit(LikeChange change) {
+        queue.offer(change);
+        int size = queued.incrementAndGet();
+        if (size == 1 || size >= batchSize) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    public int pending() {
+        return queued.get();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join();
+        log.info("Очередь лайков дописана при остановке");
+    }
+
+    private void writeLoop() {
+        Deque<List<LikeChange>> work = new ArrayDeque<>();
+        while (running || queued.get() > 0 || !work.isEmpty()) {
+            if (work.isEmpty()) {
+                List<LikeChange> batch = new ArrayList<>(batchSize);
+                awaitBatch();
+                drain(batch);
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                work.addFirst(batch);
+            }
+            write(work);
+        }
+    }
+
+    // Пакет остаётся в работе, пока не записан, разделён или отброшен; места в очереди за ним сохраняются
+    private void write(Deque<List<LikeChange>> work) {
+        List<LikeChange> batch = work.peekFirst();
+        int attempts = 0;
+        while (true) {
+            try {
+                filmStorage.applyLikeChanges(coalesce(batch, likeMatrix));
+                // Счётчики лайков в отдаваемых фильмах поменялись только сейчас, ETag популярных должен смениться
+                leaderboard.advanceEpoch();
+                work.pollFirst();
+                capacity.release(batch.size());
+                return;
+            } catch (RuntimeException e) {
+                attempts++;
+                if (isRetryable(e) || attempts < MAX_ATTEMPTS) {
+                    log.error("Не удалось записать {} изменений лайков, повтор", batch.size(), e);
+                    LockSupport.parkNanos(RETRY_PAUSE_NANOS);
+                    continue;
+                }
+                work.pollFirst();
+                if (batch.size() > 1) {
+                    log.warn("Пакет из {} изменений лайков не записан после {} попыток, делится пополам: {}",
+                            batch.size(), attempts, e.getMessage());
+                    work.addFirst(new ArrayList<>(batch.subList(batch.size() / 2, batch.size())));
+                    work.addFirst(new ArrayList<>(batch.subList(0, batch.size() / 2)));
+                } else {
+                    log.error("Изменение лайка {} отброшено после {} попыток", batch.get(0), attempts, e);
+                    capacity.release();
+                }
+                return;
+            }
+        }
+    }
+
+    // Недоступность БД лечится ожиданием, а нарушение ограничений или ошибка в данных — нет
+    private static boolean isRetryable(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException;
+    }
+
+    // Ждём, пока наберётся пакет, но не дольше max-delay с момента появления первого изменения
+    private void awaitBatch() {
+        while (running && queued.get() == 0) {
+            LockSupport.parkNanos(maxDelayNanos);
+        }
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (running && queued.get() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private void drain(List<LikeChange> batch) {
+        LikeChange change;
+        while (batch.size() < batchSize && (change = queue.poll()) != null) {
+            queued.decrementAndGet();
+            batch.add(change);
+        }
+    }
+
+    /**
+     * Каждая изменённая пара записывается один раз с состоянием, которое матрица содержит сейчас.
+     * Изменение матрицы и постановка в очередь не атомарны, поэтому порядок операций в очереди может
+     * не совпадать с порядком изменений; запись итогового состояния от него не зависит, а повторная
+     * запись уже сохранённого состояния ничего не меняет.
+     */
+    static List<LikeChange> coalesce(List<LikeChange> batch, LikeMatrix likeMatrix) {
+        Map<Long, LikeChange> pairs = new LinkedHashMap<>();
+        for (LikeChange change : batch) {
+            long key = ((long) change.filmId() << 32) | (change.userId() & 0xFFFFFFFFL);
+            pairs.putIfAbsent(key, change);
+        }
+        List<LikeChange> result = new ArrayList<>(pairs.size());
+        for (LikeChange change : pairs.values()) {
+            result.add(new LikeChange(change.filmId(), change.userId(),
+                    likeMatrix.hasLike(change.filmId(), change.userId())));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+
+/**
+ * Подсчёт весов по соседям второго уровня: для каждого источника перебираются его связи,
+ * и каждой цели, кроме исключённых, прибавляется вес источника.
+ * Большие обходы делятся между потоками ForkJoinPool, частичные счётчики затем складываются.
+ */
+final class ParallelCounter {
+    // Меньше этого числа перебираемых связей обход выполняется в текущем потоке
+    private static final int SEQUENTIAL_EDGES = 4096;
+
+    private ParallelCounter() {
+    }
+
+    /**
+     * @param sources  источники обхода
+     * @param weights  вес каждого источника или null, если все веса равны 1
+     * @param links    связи источника в виде отсортированного массива
+     * @param excluded отсортированный массив целей, которые не учитываются
+     * @param self     цель, которая не учитывается (сам пользователь)
+     */
+    static IntCountMap count(int[] sources, int[] weights, IntFunction<int[]> links, int[] excluded, int self) {
+        CountTask task = new CountTask(sources, weights, links, excluded, self, 0, sources.length);
+        return task.edges() < SEQUENTIAL_EDGES ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+    }
+
+    private static final class CountTask extends RecursiveTask<IntCountMap> {
+        private final int[] sources;
+        private final int[] weights;
+        private final IntFunction<int[]> links;
+        private final int[] excluded;
+        private final int self;
+        private final int from;
+        private final int to;
+
+        CountTask(int[] sources, int[] weights, IntFunction<int[]> links, int[] excluded, int self, int from, int to) {
+            this.sources = sources;
+            this.weights = weights;
+            this.links = links;
+            this.excluded = excluded;
+            this.self = self;
+            this.from = from;
+            this.to = to;
+        }
+
+        int edges() {
+            int edges = 0;
+            for (int i = from; i < to; i++) {
+                edges += links.apply(sources[i]).length;
+            }
+            return edges;
+        }
+
+        @Override
+        protected IntCountMap compute() {
+            if (to - from > 1 && edges() >= SEQUENTIAL_EDGES) {
+                int middle = (from + to) >>> 1;
+                CountTask left = new CountTask(sources, weights, links, excluded, self, from, middle);
+                left.fork();
+                IntCountMap result = new CountTask(sources, weights, links, excluded, self, middle, to).compute();
+                result.addAll(left.join());
+                return result;
+            }
+            IntCountMap counts = new IntCountMap(64);
+            for (int i = from; i < to; i++) {
+                int weight = weights == null ? 1 : weights[i];
+                for (int target : links.apply(sources[i])) {
+                    if (target != self && !SortedIntArrays.contains(excluded, target)) {
+                        counts.add(target, weight);
+                    }
+                }
+            }
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Рейтинг фильмов по количеству лайков, который хранится в памяти и всегда отсортирован.
+ * Кроме общего рейтинга ведутся отдельные рейтинги по каждому жанру, рейтингу MPA и году выпуска.
+ * Заполняется из БД при старте и дальше обновляется сервисом при каждом изменении фильмов и лайков.
+ * Изменения идут под эксклюзивной блокировкой, чтение обычно обходится без неё.
+ * Каждое изменение увеличивает эпоху рейтинга: пока она прежняя, любая выборка из рейтинга не изменилась.
+ */
+@Component
+@Slf4j
+public class PopularityLeaderboard {
+    private static final Comparator<Entry> RANKING_ORDER = Comparator
+            .comparingInt(Entry::likes).reversed()
+            .thenComparingInt(Entry::filmId);
+    private static final long GENRE_FACET = 1L << 32;
+    private static final long MPA_FACET = 2L << 32;
+    private static final long YEAR_FACET = 3L << 32;
+
+    private final FilmStorage filmStorage;
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final NavigableSet<Entry> ranking = new ConcurrentSkipListSet<>(RANKING_ORDER);
+    private final Map<Long, NavigableSet<Entry>> facetRankings = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> facetSizes = new ConcurrentHashMap<>();
+    private final StampedLock lock = new StampedLock();
+    private final AtomicLong epoch = new AtomicLong();
+
+    public PopularityLeaderboard(@Qualifier("filmDbStorage") FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        List<Entry> loaded = new ArrayList<>();
+        filmStorage.streamAll(film -> loaded.add(new Entry(film.getId(), film.getLikeCount(), facetsOf(film))));
+        long stamp = lock.writeLock();
+        try {
+            entries.clear();
+            ranking.clear();
+            facetRankings.clear();
+            facetSizes.clear();
+            loaded.forEach(this::put);
+            epoch.incrementAndGet();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        log.info("Рейтинг популярности загружен: {} фильмов", loaded.size());
+    }
+
+    // Вызывается и при создании, и при обновлении фильма: лайки сохраняются, а жанры, MPA и год пересчитываются
+    public void putFilm(Film film) {
+        long stamp = lock.writeLock();
+        try {
+            Entry old = entries.get(film.getId());
+            if (old != null) {
+                remove(old);
+            }
+            put(new Entry(film.getId(), old == null ? 0 : old.likes(), facetsOf(film)));
+            epoch.incrementAndGet();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void increment(int filmId) {
+        change(filmId, 1);
+    }
+
+    public void decrement(int filmId) {
+        change(filmId, -1);
+    }
+
+    // Выставляет точное число лайков, например после исправления расходившегося счётчика в БД
+    public void setLikes(int filmId, int likes) {
+        long stamp = lock.writeLock();
+        try {
+            Entry old = entries.get(filmId);
+            if (old == null || old.likes() == likes) {
+                return;
+            }
+            remove(old);
+            put(new Entry(filmId, likes, old.facets()));
+            epoch.incrementAndGet();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public long getEpoch() {
+        return epoch.get();
+    }
+
+    // Данные фильмов в выдаче изменились без изменения рейтинга, например при отложенной записи лайков
+    public void advanceEpoch() {
+        epoch.incrementAndGet();
+    }
+
+    public int getLikes(int filmId) {
+        Entry entry = entries.get(filmId);
+        return entry == null ? 0 : entry.likes();
+    }
+
+    public List<Integer> getTop(int count) {
+        return getTop(count, null, null, null);
+    }
+
+    // Сначала рейтинг читается без блокировки; если за это время он изменился, чтение повторяется под блокировкой
+    public List<Integer> getTop(int count, Integer genreId, Integer mpaId, Integer year) {
+        long stamp = lock.tryOptimisticRead();
+        List<Integer> top = collectTop(count, genreId, mpaId, year);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                top = collectTop(count, genreId, mpaId, year);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return top;
+    }
+
+    // Обходится самый маленький из подходящих рейтингов, остальные условия проверяются по самой записи
+    private List<Integer> collectTop(int count, Integer genreId, Integer mpaId, Integer year) {
+        NavigableSet<Entry> source = ranking;
+        int sourceSize = Integer.MAX_VALUE;
+        for (Long facet : requestedFacets(genreId, mpaId, year)) {
+            int size = facetSizes.getOrDefault(facet, 0);
+            if (size < sourceSize) {
+                source = facetRankings.getOrDefault(facet, Collections.emptyNavigableSet());
+                sourceSize = size;
+            }
+        }
+        List<Integer> top = new ArrayList<>(Math.max(count, 0));
+        for (Entry entry : source) {
+            if (top.size() >= count) {
+                break;
+            }
+            if (entry.facets().matches(genreId, mpaId, year)) {
+                top.add(entry.filmId());
+            }
+        }
+        return top;
+    }
+
+    private void change(int filmId, int delta) {
+        long stamp = lock.writeLock();
+        try {
+            Entry old = entries.get(filmId);
+            if (old == null) {
+                return;
+            }
+            remove(old);
+            put(new Entry(filmId, old.likes() + delta, old.facets()));
+            epoch.incrementAndGet();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void put(Entry entry) {
+        entries.put(entry.filmId(), entry);
+        ranking.add(entry);
+        for (long facet : entry.facets().keys()) {
+            facetRankings.computeIfAbsent(facet, key -> new ConcurrentSkipListSet<>(RANKING_ORDER)).add(entry);
+            facetSizes.merge(facet, 1, Integer::sum);
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.filmId());
+        ranking.remove(entry);
+        for (long facet : entry.facets().keys()) {
+            facetRankings.get(facet).remove(entry);
+            facetSizes.merge(facet, -1, Integer::sum);
+        }
+    }
+
+    private static List<Long> requestedFacets(Integer genreId, Integer mpaId, Integer year) {
+        List<Long> facets = new ArrayList<>(3);
+        if (genreId != null) {
+            facets.add(GENRE_FACET | genreId);
+        }
+        if (mpaId != null) {
+            facets.add(MPA_FACET | mpaId);
+        }
+        if (year != null) {
+            facets.add(YEAR_FACET | year);
+        }
+        return facets;
+    }
+
+    private static Facets facetsOf(Film film) {
+        int[] genreIds = film.getGenres() == null ? new int[0] : film.getGenres().stream()
+                .mapToInt(Genre::getId)
+                .distinct()
+                .toArray();
+        return new Facets(film.getMpa().getId(), film.getReleaseDate().getYear(), genreIds);
+    }
+
+    private record Entry(int filmId, int likes, Facets facets) {
+    }
+
+    private record Facets(int mpaId, int year, int[] genreIds) {
+        long[] keys() {
+            long[] keys = new long[genreIds.length + 2];
+            keys[0] = MPA_FACET | mpaId;
+            keys[1] = YEAR_FACET | year;
+            for (int i = 0; i < genreIds.length; i++) {
+                keys[i + 2] = GENRE_FACET | genreIds[i];
+            }
+            return keys;
+        }
+
+        boolean matches(Integer genreId, Integer mpaId, Integer year) {
+            return (mpaId == null || this.mpaId == mpaId)
+                    && (year == null || this.year == year)
+                    && (genreId == null || Arrays.stream(genreIds).anyMatch(id -> id == genreId));
+        }
+    }
+}
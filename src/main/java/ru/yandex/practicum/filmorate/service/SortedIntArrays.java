@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.Arrays;
+
+/**
+ * Операции над отсортированными массивами ID, которые индексы в памяти публикуют как неизменяемые.
+ * Изменяющие операции возвращают новый массив и не трогают исходный.
+ */
+final class SortedIntArrays {
+    static final int[] EMPTY = new int[0];
+
+    private SortedIntArrays() {
+    }
+
+    static int[] insert(int[] ids, int id) {
+        if (ids == null) {
+            return new int[]{id};
+        }
+        int position = Arrays.binarySearch(ids, id);
+        if (position >= 0) {
+            return ids;
+        }
+        position = -position - 1;
+        int[] updated = new int[ids.length + 1];
+        System.arraycopy(ids, 0, updated, 0, position);
+        updated[position] = id;
+        System.arraycopy(ids, position, updated, position + 1, ids.length - position);
+        return updated;
+    }
+
+    // Возвращает null, если удалён последний элемент, чтобы compute убрал ключ из карты
+    static int[] delete(int[] ids, int id) {
+        int position = Arrays.binarySearch(ids, id);
+        if (position < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return null;
+        }
+        int[] updated = new int[ids.length - 1];
+        System.arraycopy(ids, 0, updated, 0, position);
+        System.arraycopy(ids, position + 1, updated, position, ids.length - position - 1);
+        return updated;
+    }
+
+    static int[] intersect(int[] first, int[] second) {
+        int[] result = new int[Math.min(first.length, second.length)];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    static boolean contains(int[] ids, int id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    // Позиция первого элемента больше id, или длина массива, если таких нет
+    static int firstAfter(int[] ids, int id) {
+        int position = Arrays.binarySearch(ids, id);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    static final class IntList {
+        private int[] values = new int[8];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -1,23 +1,52 @@
 package ru.yandex.practicum.filmorate.service;
 
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.EntityVersion;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
+@Timed("filmorate.service")
 @Service
 public class UserService {
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int FRIENDSHIP_LOCK_STRIPES = 64;
+
     private final UserStorage userStorage;
+    private final FriendshipStorage friendshipStorage;
+    private final FriendGraphIndex friendGraph;
+    private final FriendRecommender friendRecommender;
+    // Запись дружбы в БД и в граф идёт под одной блокировкой владельца связи: иначе граф может применить
+    // одновременные добавление и удаление в порядке, обратном порядку их фиксации в БД
+    private final ReentrantLock[] friendshipLocks = new ReentrantLock[FRIENDSHIP_LOCK_STRIPES];
 
-    public UserService(@Qualifier("userDbStorage") UserStorage userStorage) {
+    public UserService(@Qualifier("userDbStorage") UserStorage userStorage,
+                       FriendshipStorage friendshipStorage,
+                       FriendGraphIndex friendGraph,
+                       FriendRecommender friendRecommender) {
         this.userStorage = userStorage;
+        this.friendshipStorage = friendshipStorage;
+        this.friendGraph = friendGraph;
+        this.friendRecommender = friendRecommender;
+        for (int i = 0; i < FRIENDSHIP_LOCK_STRIPES; i++) {
+            friendshipLocks[i] = new ReentrantLock();
+        }
     }
 
     public User create(User user) {
         return userStorage.create(user);
     }
 
+    public List<User> createAll(List<User> users) {
+        return userStorage.createAll(users);
+    }
+
     public User update(User user) {
         return userStorage.update(user);
     }
@@ -26,43 +55,96 @@ public class UserService {
         return userStorage.getAll();
     }
 
+    public List<User> getPage(int afterId, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        return userStorage.getPage(afterId, limit);
+    }
+
+    public void streamAll(Consumer<User> consumer) {
+        userStorage.streamAll(consumer);
+    }
+
     public User getUserById(int id) {
         return userStorage.getUserById(id);
     }
 
+    public EntityVersion getUserVersion(int id) {
+        return userStorage.getVersion(id);
+    }
+
     public void addFriend(int userId, int friendId) {
         userStorage.getUserById(userId);
         userStorage.getUserById(friendId);
-        userStorage.addFriend(userId, friendId);
+        ReentrantLock lock = friendshipLock(userId);
+        lock.lock();
+        try {
+            userStorage.addFriend(userId, friendId);
+            friendGraph.addFriend(userId, friendId);
+        } finally {
+            lock.unlock();
+        }
+        friendRecommender.invalidate(userId);
+    }
+
+    public void confirmFriend(int userId, int friendId) {
+        ReentrantLock lock = friendshipLock(userId);
+        lock.lock();
+        try {
+            if (!friendshipStorage.confirmFriendship(userId, friendId)) {
+                return;
+            }
+            friendGraph.addFriend(userId, friendId);
+        } finally {
+            lock.unlock();
+        }
+        friendRecommender.invalidate(userId);
     }
 
     public void removeFriend(int userId, int friendId) {
         userStorage.getUserById(userId);
         userStorage.getUserById(friendId);
-        userStorage.removeFriend(userId, friendId);
+        ReentrantLock lock = friendshipLock(userId);
+        lock.lock();
+        try {
+            userStorage.removeFriend(userId, friendId);
+            friendGraph.removeFriend(userId, friendId);
+        } finally {
+            lock.unlock();
+        }
+        friendRecommender.invalidate(userId);
     }
 
     public List<User> getFriends(int userId) {
         userStorage.getUserById(userId);
-        Set<Integer> friendIds = userStorage.getFriends(userId);
-        List<User> friends = new ArrayList<>();
-        for (Integer id : friendIds) {
-            friends.add(userStorage.getUserById(id));
-        }
-        return friends;
+        return userStorage.getUsersByIds(friendGraph.getFriends(userId));
     }
 
     public List<User> getCommonFriends(int userId, int otherId) {
         userStorage.getUserById(userId);
         userStorage.getUserById(otherId);
-        Set<Integer> userFriends = userStorage.getFriends(userId);
-        Set<Integer> otherFriends = userStorage.getFriends(otherId);
-        Set<Integer> commonIds = new HashSet<>(userFriends);
-        commonIds.retainAll(otherFriends);
-        List<User> commonFriends = new ArrayList<>();
-        for (Integer id : commonIds) {
-            commonFriends.add(userStorage.getUserById(id));
+        return userStorage.getUsersByIds(friendGraph.getCommonFriends(userId, otherId));
+    }
+
+    public List<User> getFriendsOfFriends(int userId, int afterId, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
         }
-        return commonFriends;
+        userStorage.getUserById(userId);
+        return userStorage.getUsersByIds(friendGraph.getFriendsOfFriends(userId, afterId, limit));
+    }
+
+    public List<User> getFriendRecommendations(int userId, int limit) {
+        if (limit < 1 || limit > FriendRecommender.MAX_RECOMMENDATIONS) {
+            throw new ValidationException("Количество рекомендаций должно быть от 1 до "
+                    + FriendRecommender.MAX_RECOMMENDATIONS);
+        }
+        userStorage.getUserById(userId);
+        return userStorage.getUsersByIds(friendRecommender.recommend(userId, limit));
+    }
+
+    private ReentrantLock friendshipLock(int userId) {
+        return friendshipLocks[userId & (FRIENDSHIP_LOCK_STRIPES - 1)];
     }
-}
\ No newline at end of file
+}
@@ -1,28 +1,45 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.Friendship;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.function.BiConsumer;
 
+@Timed("filmorate.storage")
 @Component
 @RequiredArgsConstructor
 public class FriendshipDbStorage implements FriendshipStorage {
     private final JdbcTemplate jdbcTemplate;
 
-    public void confirmFriendship(int userId, int friendId) {
+    @Transactional
+    public boolean confirmFriendship(int userId, int friendId) {
         String sql = "UPDATE friendships SET confirmed = true WHERE user_id = ? AND friend_id = ?";
-        jdbcTemplate.update(sql, userId, friendId);
+        if (jdbcTemplate.update(sql, userId, friendId) == 0) {
+            return false;
+        }
+        jdbcTemplate.update("UPDATE users SET version = version + 1, updated_at = CURRENT_TIMESTAMP WHERE id = ?",
+                userId);
+        return true;
     }
 
+    @Transactional(readOnly = true)
     public List<Friendship> getFriendshipsByUserId(int userId) {
         String sql = "SELECT * FROM friendships WHERE user_id = ?";
         return jdbcTemplate.query(sql, this::mapRowToFriendship, userId);
     }
 
+    public void streamConfirmed(BiConsumer<Integer, Integer> consumer) {
+        String sql = "SELECT user_id, friend_id FROM friendships WHERE confirmed = true ORDER BY user_id, friend_id";
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> consumer.accept(rs.getInt("user_id"), rs.getInt("friend_id")));
+    }
+
     private Friendship mapRowToFriendship(ResultSet rs, int rowNum) throws SQLException {
         Friendship friendship = new Friendship();
         friendship.setUserId(rs.getInt("user_id"));
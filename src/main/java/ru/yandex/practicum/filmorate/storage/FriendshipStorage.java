@@ -3,9 +3,12 @@ package ru.yandex.practicum.filmorate.storage;
 import ru.yandex.practicum.filmorate.model.Friendship;
 
 import java.util.List;
+import java.util.function.BiConsumer;
 
 public interface FriendshipStorage {
-    void confirmFriendship(int userId, int friendId);
+    boolean confirmFriendship(int userId, int friendId);
 
     List<Friendship> getFriendshipsByUserId(int userId);
+
+    void streamConfirmed(BiConsumer<Integer, Integer> consumer);
 }
\ No newline at end of file
@@ -1,8 +1,10 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 
@@ -10,16 +12,19 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 
+@Timed("filmorate.storage")
 @Component
 @RequiredArgsConstructor
 public class MpaDbStorage implements MpaStorage {
     private final JdbcTemplate jdbcTemplate;
 
+    @Transactional(readOnly = true)
     public List<MpaRating> getAll() {
         String sql = "SELECT id, name FROM mpa_ratings ORDER BY id";
         return jdbcTemplate.query(sql, this::mapRowToMpaRating);
     }
 
+    @Transactional(readOnly = true)
     public MpaRating getById(int id) {
         String sql = "SELECT id, name FROM mpa_ratings WHERE id = ?";
         return jdbcTemplate.query(sql, this::mapRowToMpaRating, id)
@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+
+import java.util.List;
+
+/**
+ * Справочники жанров и рейтингов MPA в памяти. Таблицы маленькие и почти не меняются,
+ * поэтому они загружаются целиком при старте и периодически перечитываются.
+ * Экземпляры Genre и MpaRating общие для всех фильмов и не должны изменяться.
+ * Версия справочников растёт, только если перечитанные данные отличаются от прежних.
+ */
+@Component
+@Slf4j
+public class ReferenceDataRegistry {
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private volatile Snapshot snapshot;
+
+    public ReferenceDataRegistry(GenreStorage genreStorage, MpaStorage mpaStorage) {
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+    }
+
+    @PostConstruct
+    @Scheduled(initialDelayString = "${filmorate.reference.refresh-interval}",
+            fixedDelayString = "${filmorate.reference.refresh-interval}")
+    public void refresh() {
+        List<Genre> genres = List.copyOf(genreStorage.getAll());
+        List<MpaRating> mpaRatings = List.copyOf(mpaStorage.getAll());
+        Genre[] genresById = new Genre[genres.stream().mapToInt(Genre::getId).max().orElse(0) + 1];
+        genres.forEach(genre -> genresById[genre.getId()] = genre);
+        MpaRating[] mpaById = new MpaRating[mpaRatings.stream().mapToInt(MpaRating::getId).max().orElse(0) + 1];
+        mpaRatings.forEach(mpa -> mpaById[mpa.getId()] = mpa);
+        Snapshot previous = snapshot;
+        long version = previous == null ? 1 : previous.version();
+        if (previous != null && (!previous.genres().equals(genres) || !previous.mpaRatings().equals(mpaRatings))) {
+            version++;
+        }
+        snapshot = new Snapshot(genres, genresById, mpaRatings, mpaById, version);
+        log.debug("Справочники загружены: {} жанров, {} рейтингов MPA", genres.size(), mpaRatings.size());
+    }
+
+    public long getVersion() {
+        return snapshot.version();
+    }
+
+    public List<Genre> getGenres() {
+        return snapshot.genres();
+    }
+
+    public Genre getGenre(int id) {
+        Genre[] genresById = snapshot.genresById();
+        if (id < 0 || id >= genresById.length || genresById[id] == null) {
+            throw new NotFoundException("Жанр с ID " + id + " не найден");
+        }
+        return genresById[id];
+    }
+
+    public List<MpaRating> getMpaRatings() {
+        return snapshot.mpaRatings();
+    }
+
+    public MpaRating getMpa(int id) {
+        MpaRating[] mpaById = snapshot.mpaById();
+        if (id < 0 || id >= mpaById.length || mpaById[id] == null) {
+            throw new NotFoundException("MPA рейтинг с ID " + id + " не найден");
+        }
+        return mpaById[id];
+    }
+
+    private record Snapshot(List<Genre> genres, Genre[] genresById, List<MpaRating> mpaRatings, MpaRating[] mpaById,
+                            long version) {
+    }
+}
@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.storage.accounting;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Учёт SQL по HTTP-запросам, включается свойством filmorate.sql.accounting.enabled.
+ * Оборачивается только основной бин dataSource, поэтому при работе с репликами запросы не считаются дважды.
+ */
+@Configuration
+@ConditionalOnProperty(name = "filmorate.sql.accounting.enabled", havingValue = "true")
+public class SqlAccountingConfig {
+
+    @Bean
+    public static BeanPostProcessor statementAccountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if ("dataSource".equals(beanName) && bean instanceof DataSource dataSource) {
+                    return new StatementAccountingDataSource(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public SqlAccountingFilter sqlAccountingFilter(
+            MeterRegistry meterRegistry,
+            @Value("${filmorate.sql.accounting.sample-rate}") double sampleRate,
+            @Value("${filmorate.sql.accounting.repeated-statement-threshold}") int repeatedStatementThreshold) {
+        return new SqlAccountingFilter(meterRegistry, sampleRate, repeatedStatementThreshold);
+    }
+}
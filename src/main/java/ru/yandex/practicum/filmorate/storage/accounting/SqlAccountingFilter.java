@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.storage.accounting;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Собирает статистику SQL для выборки HTTP-запросов. Доля запросов задаётся sample-rate,
+ * заголовок {@value #FORCE_HEADER} включает сбор для конкретного запроса.
+ * Итог пишется в лог и в метрики по шаблону URI, повторы одного запроса сверх порога — предупреждением о N+1.
+ */
+@Slf4j
+public class SqlAccountingFilter extends OncePerRequestFilter {
+    public static final String FORCE_HEADER = "X-Sql-Statistics";
+
+    private final MeterRegistry meterRegistry;
+    private final double sampleRate;
+    private final int repeatedStatementThreshold;
+
+    public SqlAccountingFilter(MeterRegistry meterRegistry, double sampleRate, int repeatedStatementThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.sampleRate = sampleRate;
+        this.repeatedStatementThreshold = repeatedStatementThreshold;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (request.getHeader(FORCE_HEADER) == null && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        SqlStatistics statistics = SqlStatistics.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            SqlStatistics.finish();
+            if (!response.isCommitted()) {
+                SqlStatisticsResponseAdvice.headers(statistics, repeatedStatementThreshold).forEach(response::setHeader);
+            }
+            report(request, statistics);
+        }
+    }
+
+    private void report(HttpServletRequest request, SqlStatistics statistics) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+        DistributionSummary.builder("filmorate.http.sql.statements")
+                .description("SQL-запросов на один HTTP-запрос")
+                .tags("method", request.getMethod(), "uri", uri)
+                .register(meterRegistry)
+                .record(statistics.getStatements());
+        Timer.builder("filmorate.http.sql.time")
+                .description("Время выполнения SQL за один HTTP-запрос")
+                .tags("method", request.getMethod(), "uri", uri)
+                .register(meterRegistry)
+                .record(statistics.getNanos(), TimeUnit.NANOSECONDS);
+        log.debug("{} {}: SQL-запросов {}, {} мкс", request.getMethod(), request.getRequestURI(),
+                statistics.getStatements(), TimeUnit.NANOSECONDS.toMicros(statistics.getNanos()));
+        Map<String, Integer> repeated = statistics.getRepeatedStatements(repeatedStatementThreshold);
+        if (!repeated.isEmpty()) {
+            log.warn("Возможный N+1 в {} {}: повторяющиеся запросы {}", request.getMethod(), uri, repeated);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.storage.accounting;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Статистика SQL-запросов, выполненных потоком за время одного HTTP-запроса: число запросов, суммарное время
+ * их выполнения в JDBC и число повторов каждого текста запроса. Запросы из других потоков не учитываются.
+ */
+public final class SqlStatistics {
+    private static final ThreadLocal<SqlStatistics> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, Integer> executions = new HashMap<>();
+    private int statements;
+    private long nanos;
+
+    private SqlStatistics() {
+    }
+
+    static SqlStatistics start() {
+        SqlStatistics statistics = new SqlStatistics();
+        CURRENT.set(statistics);
+        return statistics;
+    }
+
+    static void finish() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Статистика текущего потока или {@code null}, если запрос не попал в выборку.
+     */
+    public static SqlStatistics current() {
+        return CURRENT.get();
+    }
+
+    void record(String sql, long elapsedNanos) {
+        statements++;
+        nanos += elapsedNanos;
+        executions.merge(sql, 1, Integer::sum);
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Запросы с одинаковым текстом, выполненные не меньше {@code threshold} раз, — признак N+1.
+     */
+    public Map<String, Integer> getRepeatedStatements(int threshold) {
+        Map<String, Integer> repeated = new LinkedHashMap<>();
+        executions.forEach((sql, count) -> {
+            if (count >= threshold) {
+                repeated.put(sql, count);
+            }
+        });
+        return repeated;
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.storage.accounting;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Добавляет статистику SQL в заголовки ответа непосредственно перед записью тела, когда все запросы
+ * обработчика уже выполнены. Ответам без тела заголовки выставляет {@link SqlAccountingFilter}.
+ * Потоковые ответы отдаются без заголовков, их статистика попадает только в лог.
+ * Регистрируется сканированием как {@link ControllerAdvice}, поэтому условие включения стоит на самом классе.
+ */
+@ControllerAdvice
+@ConditionalOnProperty(name = "filmorate.sql.accounting.enabled", havingValue = "true")
+public class SqlStatisticsResponseAdvice implements ResponseBodyAdvice<Object> {
+    public static final String STATEMENTS_HEADER = "X-Sql-Statements";
+    public static final String TIME_HEADER = "X-Sql-Time-Micros";
+    public static final String REPEATED_HEADER = "X-Sql-Repeated-Statements";
+
+    private final int repeatedStatementThreshold;
+
+    public SqlStatisticsResponseAdvice(
+            @Value("${filmorate.sql.accounting.repeated-statement-threshold}") int repeatedStatementThreshold) {
+        this.repeatedStatementThreshold = repeatedStatementThreshold;
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        SqlStatistics statistics = SqlStatistics.current();
+        if (statistics != null) {
+            headers(statistics, repeatedStatementThreshold).forEach(response.getHeaders()::set);
+        }
+        return body;
+    }
+
+    static Map<String, String> headers(SqlStatistics statistics, int repeatedStatementThreshold) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(STATEMENTS_HEADER, String.valueOf(statistics.getStatements()));
+        headers.put(TIME_HEADER, String.valueOf(TimeUnit.NANOSECONDS.toMicros(statistics.getNanos())));
+        int repeated = statistics.getRepeatedStatements(repeatedStatementThreshold).size();
+        if (repeated > 0) {
+            headers.put(REPEATED_HEADER, String.valueOf(repeated));
+        }
+        return headers;
+    }
+}
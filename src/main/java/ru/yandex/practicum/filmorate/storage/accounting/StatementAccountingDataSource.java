@@ -0,0 +1,91 @@
+package ru.yandex.practicum.filmorate.storage.accounting;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Считает SQL-запросы и время их выполнения в {@link SqlStatistics} текущего потока.
+ * Если на момент получения соединения статистика не собирается, возвращается исходное соединение,
+ * поэтому запросы вне выборки не платят за учёт ничего, кроме чтения ThreadLocal.
+ * Учитывается только время вызовов execute*, чтение ResultSet в него не входит.
+ */
+public class StatementAccountingDataSource extends DelegatingDataSource {
+    private static final String BATCH = "<batch>";
+
+    public StatementAccountingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    private static Connection wrap(Connection connection) {
+        if (SqlStatistics.current() == null) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(StatementAccountingDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    return switch (method.getName()) {
+                        case "createStatement" -> wrap((Statement) result, Statement.class, null);
+                        case "prepareStatement" -> wrap((Statement) result, PreparedStatement.class, (String) args[0]);
+                        case "prepareCall" -> wrap((Statement) result, CallableStatement.class, (String) args[0]);
+                        default -> result;
+                    };
+                });
+    }
+
+    private static Statement wrap(Statement statement, Class<? extends Statement> type, String preparedSql) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (!method.getName().startsWith("execute")) {
+                return invoke(statement, method, args);
+            }
+            long started = System.nanoTime();
+            try {
+                return invoke(statement, method, args);
+            } finally {
+                SqlStatistics statistics = SqlStatistics.current();
+                if (statistics != null) {
+                    statistics.record(sql(method, args, preparedSql), System.nanoTime() - started);
+                }
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(StatementAccountingDataSource.class.getClassLoader(),
+                new Class<?>[]{type}, handler));
+    }
+
+    private static String sql(Method method, Object[] args, String preparedSql) {
+        if (preparedSql != null) {
+            return preparedSql;
+        }
+        if (args != null && args.length > 0 && args[0] instanceof String sql) {
+            return sql;
+        }
+        return BATCH;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ru.yandex.practicum.filmorate.model.EntityVersion;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeChange;
+import ru.yandex.practicum.filmorate.storage.replica.ReplicaRoutingDataSource;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш фильмов по ID поверх основного хранилища. Ограничен по размеру и времени жизни записи.
+ * Изменение фильма или его лайков удаляет фильм из кэша: версию и время изменения выставляет БД,
+ * и следующее чтение получает их вместе со счётчиком лайков.
+ * Списки и выборки без ID проходят мимо кэша.
+ * Промахи догружаются вне блокировок кэша, чтобы обращение к БД не закрепляло виртуальный поток
+ * за платформенным. Загруженный фильм кладётся в кэш, только если за время загрузки он не менялся.
+ * Промахи читаются из основной БД: отстающая реплика могла бы отдать старую строку, и она жила бы в кэше
+ * до истечения срока.
+ */
+public class CachingFilmStorage implements FilmStorage {
+    private static final int WRITE_STRIPES = 64;
+
+    private final FilmStorage delegate;
+    private final Cache<Integer, Film> cache;
+    // Счётчики изменений по группам ID: по ним загрузка узнаёт, что фильм успел измениться
+    private final AtomicLongArray writeStamps = new AtomicLongArray(WRITE_STRIPES);
+
+    public CachingFilmStorage(FilmStorage delegate, long maximumSize, Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    public Cache<Integer, Film> getCache() {
+        return cache;
+    }
+
+    @Override
+    public Film create(Film film) {
+        return delegate.create(film);
+    }
+
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        return delegate.createAll(films);
+    }
+
+    @Override
+    public Film update(Film film) {
+        try {
+            return delegate.update(film);
+        } finally {
+            invalidate(film.getId());
+        }
+    }
+
+    @Override
+    public List<Film> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public List<Film> getPage(int afterId, int limit) {
+        return delegate.getPage(afterId, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        delegate.streamAll(consumer);
+    }
+
+    @Override
+    public Film getFilmById(int id) {
+        Film cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = writeStamps.get(stripe(id));
+        Film loaded = ReplicaRoutingDataSource.readFromPrimary(() -> delegate.getFilmById(id));
+        putIfUnchanged(loaded, stamp);
+        return loaded;
+    }
+
+    // Версия закэшированного фильма известна без обращения к БД
+    @Override
+    public EntityVersion getVersion(int id) {
+        Film cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return new EntityVersion(cached.getVersion(), cached.getUpdatedAt());
+        }
+        return delegate.getVersion(id);
+    }
+
+    // Недостающие фильмы догружаются из хранилища одним запросом
+    @Override
+    public List<Film> getFilmsByIds(List<Integer> ids) {
+        Map<Integer, Film> films = new HashMap<>(cache.getAllPresent(ids));
+        List<Integer> missingIds = ids.stream()
+                .filter(id -> !films.containsKey(id))
+                .distinct()
+                .collect(Collectors.toList());
+        if (!missingIds.isEmpty()) {
+            long[] stamps = new long[WRITE_STRIPES];
+            for (int i = 0; i < WRITE_STRIPES; i++) {
+                stamps[i] = writeStamps.get(i);
+            }
+            List<Film> loadedFilms = ReplicaRoutingDataSource.readFromPrimary(() -> delegate.getFilmsByIds(missingIds));
+            for (Film loaded : loadedFilms) {
+                putIfUnchanged(loaded, stamps[stripe(loaded.getId())]);
+                films.put(loaded.getId(), loaded);
+            }
+        }
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean addLike(int filmId, int userId) {
+        boolean added = delegate.addLike(filmId, userId);
+        if (added) {
+            invalidate(filmId);
+        }
+        return added;
+    }
+
+    @Override
+    public boolean removeLike(int filmId, int userId) {
+        boolean removed = delegate.removeLike(filmId, userId);
+        if (removed) {
+            invalidate(filmId);
+        }
+        return removed;
+    }
+
+    @Override
+    public Map<Integer, Integer> applyLikeChanges(List<LikeChange> changes) {
+        Map<Integer, Integer> deltas = delegate.applyLikeChanges(changes);
+        deltas.keySet().forEach(this::invalidate);
+        return deltas;
+    }
+
+    @Override
+    public int[] getLikes(int filmId, int afterUserId, int limit) {
+        return delegate.getLikes(filmId, afterUserId, limit);
+    }
+
+    @Override
+    public void streamLikes(BiConsumer<Integer, Integer> consumer) {
+        delegate.streamLikes(consumer);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer mpaId, Integer year) {
+        return delegate.getPopularFilms(count, genreId, mpaId, year);
+    }
+
+    @Override
+    public Map<Integer, Integer> reconcileLikeCounts() {
+        Map<Integer, Integer> repaired = delegate.reconcileLikeCounts();
+        repaired.keySet().forEach(this::invalidate);
+        return repaired;
+    }
+
+    private void invalidate(int filmId) {
+        markWritten(filmId);
+        cache.invalidate(filmId);
+    }
+
+    // Изменение отмечается до сброса кэша: загрузка, начатая раньше, увидит новый счётчик и не положит старую копию
+    private void markWritten(int filmId) {
+        writeStamps.incrementAndGet(stripe(filmId));
+    }
+
+    private void putIfUnchanged(Film film, long stamp) {
+        int stripe = stripe(film.getId());
+        cache.asMap().compute(film.getId(), (id, cached) -> {
+            if (cached != null || writeStamps.get(stripe) != stamp) {
+                return cached;
+            }
+            return film;
+        });
+    }
+
+    private static int stripe(int filmId) {
+        return filmId & (WRITE_STRIPES - 1);
+    }
+}
@@ -1,29 +1,54 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.EntityVersion;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.LikeChange;
+import ru.yandex.practicum.filmorate.storage.ReferenceDataRegistry;
 
+import java.sql.Date;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+@Timed("filmorate.storage")
 @Component("filmDbStorage")
-@RequiredArgsConstructor
 public class FilmDbStorage implements FilmStorage {
+    private static final int STREAM_CHUNK_SIZE = 500;
+    private static final String VERSION_BUMP = "version = version + 1, updated_at = CURRENT_TIMESTAMP";
+
     private final JdbcTemplate jdbcTemplate;
+    private final SimpleJdbcInsert jdbcInsert;
+    private final ReferenceDataRegistry referenceData;
 
-    @Override
-    public Film create(Film film) {
-        SimpleJdbcInsert jdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
+    public FilmDbStorage(JdbcTemplate jdbcTemplate, ReferenceDataRegistry referenceData) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.referenceData = referenceData;
+        this.jdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
                 .withTableName("films")
+                .usingColumns("name", "description", "release_date", "duration", "mpa_id")
                 .usingGeneratedKeyColumns("id");
+    }
+
+    @Override
+    @Transactional
+    public Film create(Film film) {
         Map<String, Object> values = new HashMap<>();
         values.put("name", film.getName());
         values.put("description", film.getDescription());
@@ -32,84 +57,268 @@ public class FilmDbStorage implements FilmStorage {
         values.put("mpa_id", film.getMpa().getId());
         Number newId = jdbcInsert.executeAndReturnKey(values);
         film.setId(newId.intValue());
+        film.setLikeCount(0);
 
-        // Сохранение жанров
-        if (film.getGenres() != null && !film.getGenres().isEmpty()) {
-            String sql = "INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)";
-            Set<Integer> uniqueGenreIds = film.getGenres().stream()
-                    .map(Genre::getId)
-                    .collect(Collectors.toSet());
-            for (Integer genreId : uniqueGenreIds) {
-                jdbcTemplate.update(sql, film.getId(), genreId);
-            }
+        writeGenres(film.getId(), Set.of(), genreIdsOf(film));
+        return film;
+    }
+
+    // Фильмы вставляются одним пакетом, жанры всех фильмов — вторым
+    @Override
+    @Transactional
+    public List<Film> createAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
         }
+        String sql = "INSERT INTO films (name, description, release_date, duration, mpa_id) VALUES (?, ?, ?, ?, ?)";
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(sql, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Film film = films.get(i);
+                        ps.setString(1, film.getName());
+                        ps.setString(2, film.getDescription());
+                        ps.setDate(3, Date.valueOf(film.getReleaseDate()));
+                        ps.setInt(4, film.getDuration());
+                        ps.setInt(5, film.getMpa().getId());
+                    }
 
-        return film;
+                    @Override
+                    public int getBatchSize() {
+                        return films.size();
+                    }
+                }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        List<Object[]> genreRows = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            film.setId(((Number) keys.get(i).values().iterator().next()).intValue());
+            film.setLikeCount(0);
+            for (Integer genreId : genreIdsOf(film)) {
+                genreRows.add(new Object[]{film.getId(), genreId});
+            }
+        }
+        if (!genreRows.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)", genreRows);
+        }
+        return films;
     }
 
+    // Фильм и его жанры пишутся в одной транзакции; в film_genres меняются только отличающиеся строки.
+    // Счётчик лайков и версию возвращает сам UPDATE, значения из запроса клиента заменяются ими
     @Override
+    @Transactional
     public Film update(Film film) {
-        String sql = "UPDATE films SET name = ?, description = ?, release_date = ?, duration = ?, mpa_id = ? WHERE id = ?";
-        int rowsAffected = jdbcTemplate.update(sql,
-                film.getName(), film.getDescription(), film.getReleaseDate(), film.getDuration(),
+        String sql = "SELECT like_count, version, updated_at FROM FINAL TABLE (UPDATE films " +
+                "SET name = ?, description = ?, release_date = ?, duration = ?, mpa_id = ?, " +
+                VERSION_BUMP + " WHERE id = ?)";
+        Boolean updated = jdbcTemplate.query(sql, (ResultSetExtractor<Boolean>) rs -> {
+            if (!rs.next()) {
+                return false;
+            }
+            film.setLikeCount(rs.getInt("like_count"));
+            film.setVersion(rs.getLong("version"));
+            film.setUpdatedAt(rs.getTimestamp("updated_at").toInstant());
+            return true;
+        }, film.getName(), film.getDescription(), film.getReleaseDate(), film.getDuration(),
                 film.getMpa().getId(), film.getId());
-        if (rowsAffected == 0) {
+        if (!Boolean.TRUE.equals(updated)) {
             throw new NotFoundException("Фильм с ID " + film.getId() + " не найден");
         }
 
-        // Обновление жанров
-        jdbcTemplate.update("DELETE FROM film_genres WHERE film_id = ?", film.getId());
-        if (film.getGenres() != null && !film.getGenres().isEmpty()) {
-            String genreSql = "INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)";
-            Set<Integer> uniqueGenreIds = film.getGenres().stream()
-                    .map(Genre::getId)
-                    .collect(Collectors.toSet());
-            for (Integer genreId : uniqueGenreIds) {
-                jdbcTemplate.update(genreSql, film.getId(), genreId);
-            }
-        }
-
+        Set<Integer> currentGenreIds = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT genre_id FROM film_genres WHERE film_id = ?", Integer.class, film.getId()));
+        writeGenres(film.getId(), currentGenreIds, genreIdsOf(film));
         return film;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<Film> getAll() {
-        String sql = "SELECT f.*, m.id AS mpa_id, m.name AS mpa_name " +
-                "FROM films f JOIN mpa_ratings m ON f.mpa_id = m.id";
-        return jdbcTemplate.query(sql, this::mapRowToFilm);
+        String sql = "SELECT f.* FROM films f";
+        return hydrate(jdbcTemplate.query(sql, this::mapRowToFilm));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Film> getPage(int afterId, int limit) {
+        String sql = "SELECT f.* FROM films f WHERE f.id > ? ORDER BY f.id LIMIT ?";
+        return hydrate(jdbcTemplate.query(sql, this::mapRowToFilm, afterId, limit));
+    }
+
+    // Фильмы выгружаются страницами по ключу, чтобы в памяти не держать больше одной страницы
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        int afterId = 0;
+        List<Film> page;
+        do {
+            page = getPage(afterId, STREAM_CHUNK_SIZE);
+            page.forEach(consumer);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == STREAM_CHUNK_SIZE);
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Film getFilmById(int id) {
-        String sql = "SELECT f.*, m.id AS mpa_id, m.name AS mpa_name " +
-                "FROM films f JOIN mpa_ratings m ON f.mpa_id = m.id WHERE f.id = ?";
-        return jdbcTemplate.query(sql, this::mapRowToFilm, id)
+        String sql = "SELECT f.* FROM films f WHERE f.id = ?";
+        return hydrate(jdbcTemplate.query(sql, this::mapRowToFilm, id))
+                .stream()
+                .findFirst()
+                .orElseThrow(() -> new NotFoundException("Фильм с ID " + id + " не найден"));
+    }
+
+    // Версия читается по первичному ключу без жанров, чтобы условный GET не собирал фильм целиком
+    @Override
+    @Transactional(readOnly = true)
+    public EntityVersion getVersion(int id) {
+        String sql = "SELECT version, updated_at FROM films WHERE id = ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) ->
+                        new EntityVersion(rs.getLong("version"), rs.getTimestamp("updated_at").toInstant()), id)
                 .stream()
                 .findFirst()
                 .orElseThrow(() -> new NotFoundException("Фильм с ID " + id + " не найден"));
     }
 
+    // Фильмы возвращаются в том же порядке, в котором переданы идентификаторы
+    @Override
+    @Transactional(readOnly = true)
+    public List<Film> getFilmsByIds(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT f.* FROM films f WHERE f.id = ANY(?)";
+        Map<Integer, Film> filmsById = hydrate(jdbcTemplate.query(sql, this::mapRowToFilm,
+                (Object) ids.toArray(new Integer[0])))
+                .stream()
+                .collect(Collectors.toMap(Film::getId, film -> film));
+        return ids.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    // Счётчик лайков в films меняется в той же транзакции, что и таблица likes
     @Override
-    public void addLike(int filmId, int userId) {
-        String sql = "INSERT INTO likes (film_id, user_id) VALUES (?, ?)";
-        jdbcTemplate.update(sql, filmId, userId);
+    @Transactional
+    public boolean addLike(int filmId, int userId) {
+        String sql = "INSERT INTO likes (film_id, user_id) SELECT ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM likes WHERE film_id = ? AND user_id = ?)";
+        if (jdbcTemplate.update(sql, filmId, userId, filmId, userId) == 0) {
+            return false;
+        }
+        jdbcTemplate.update("UPDATE films SET like_count = like_count + 1, " + VERSION_BUMP + " WHERE id = ?", filmId);
+        return true;
     }
 
     @Override
-    public void removeLike(int filmId, int userId) {
+    @Transactional
+    public boolean removeLike(int filmId, int userId) {
         String sql = "DELETE FROM likes WHERE film_id = ? AND user_id = ?";
-        jdbcTemplate.update(sql, filmId, userId);
+        if (jdbcTemplate.update(sql, filmId, userId) == 0) {
+            return false;
+        }
+        jdbcTemplate.update("UPDATE films SET like_count = like_count - 1, " + VERSION_BUMP + " WHERE id = ?", filmId);
+        return true;
+    }
+
+    // Пакет лайков применяется одной транзакцией; счётчики меняются на число реально вставленных и удалённых строк
+    @Override
+    @Transactional
+    public Map<Integer, Integer> applyLikeChanges(List<LikeChange> changes) {
+        List<LikeChange> added = changes.stream().filter(LikeChange::added).collect(Collectors.toList());
+        List<LikeChange> removed = changes.stream().filter(change -> !change.added()).collect(Collectors.toList());
+        Map<Integer, Integer> deltas = new HashMap<>();
+
+        String insertSql = "INSERT INTO likes (film_id, user_id) SELECT ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM likes WHERE film_id = ? AND user_id = ?)";
+        int[] inserted = jdbcTemplate.batchUpdate(insertSql, added.stream()
+                .map(change -> new Object[]{change.filmId(), change.userId(), change.filmId(), change.userId()})
+                .collect(Collectors.toList()));
+        for (int i = 0; i < inserted.length; i++) {
+            if (inserted[i] > 0) {
+                deltas.merge(added.get(i).filmId(), 1, Integer::sum);
+            }
+        }
+
+        String deleteSql = "DELETE FROM likes WHERE film_id = ? AND user_id = ?";
+        int[] deleted = jdbcTemplate.batchUpdate(deleteSql, removed.stream()
+                .map(change -> new Object[]{change.filmId(), change.userId()})
+                .collect(Collectors.toList()));
+        for (int i = 0; i < deleted.length; i++) {
+            if (deleted[i] > 0) {
+                deltas.merge(removed.get(i).filmId(), -1, Integer::sum);
+            }
+        }
+
+        deltas.values().removeIf(delta -> delta == 0);
+        String countSql = "UPDATE films SET like_count = like_count + ?, " + VERSION_BUMP + " WHERE id = ?";
+        jdbcTemplate.batchUpdate(countSql, deltas.entrySet()
+                .stream()
+                .map(entry -> new Object[]{entry.getValue(), entry.getKey()})
+                .collect(Collectors.toList()));
+        return deltas;
+    }
+
+    // Лайки отдаются отсортированным массивом идентификаторов пользователей, постранично
+    @Override
+    @Transactional(readOnly = true)
+    public int[] getLikes(int filmId, int afterUserId, int limit) {
+        String sql = "SELECT user_id FROM likes WHERE film_id = ? AND user_id > ? ORDER BY user_id LIMIT ?";
+        return jdbcTemplate.queryForList(sql, Integer.class, filmId, afterUserId, limit)
+                .stream()
+                .mapToInt(Integer::intValue)
+                .toArray();
     }
 
+    // Лайки отдаются упорядоченными по пользователю, чтобы индекс в памяти собирался без сортировки
     @Override
-    public List<Film> getPopularFilms(int count) {
-        String sql = "SELECT f.*, m.id AS mpa_id, m.name AS mpa_name, COUNT(l.user_id) as like_count " +
-                "FROM films f " +
-                "JOIN mpa_ratings m ON f.mpa_id = m.id " +
-                "LEFT JOIN likes l ON f.id = l.film_id " +
-                "GROUP BY f.id, m.id, m.name " +
-                "ORDER BY like_count DESC LIMIT ?";
-        return jdbcTemplate.query(sql, this::mapRowToFilm, count);
+    public void streamLikes(BiConsumer<Integer, Integer> consumer) {
+        String sql = "SELECT user_id, film_id FROM likes ORDER BY user_id, film_id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(STREAM_CHUNK_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getInt("user_id"), rs.getInt("film_id")));
+    }
+
+    // Фильтры добавляются в запрос только если заданы, чтобы БД могла использовать подходящий индекс
+    @Override
+    @Transactional(readOnly = true)
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer mpaId, Integer year) {
+        StringBuilder sql = new StringBuilder("SELECT f.* FROM films f WHERE TRUE");
+        List<Object> args = new ArrayList<>();
+        if (genreId != null) {
+            sql.append(" AND EXISTS (SELECT 1 FROM film_genres fg WHERE fg.film_id = f.id AND fg.genre_id = ?)");
+            args.add(genreId);
+        }
+        if (mpaId != null) {
+            sql.append(" AND f.mpa_id = ?");
+            args.add(mpaId);
+        }
+        if (year != null) {
+            sql.append(" AND f.release_date >= ? AND f.release_date < ?");
+            args.add(LocalDate.of(year, 1, 1));
+            args.add(LocalDate.of(year + 1, 1, 1));
+        }
+        sql.append(" ORDER BY f.like_count DESC, f.id LIMIT ?");
+        args.add(count);
+        return hydrate(jdbcTemplate.query(sql.toString(), this::mapRowToFilm, args.toArray()));
+    }
+
+    @Override
+    @Transactional
+    public Map<Integer, Integer> reconcileLikeCounts() {
+        String sql = "SELECT id, like_count FROM FINAL TABLE (UPDATE films f " +
+                "SET like_count = (SELECT COUNT(*) FROM likes l WHERE l.film_id = f.id), " + VERSION_BUMP +
+                " WHERE f.like_count <> (SELECT COUNT(*) FROM likes l WHERE l.film_id = f.id))";
+        Map<Integer, Integer> repaired = new HashMap<>();
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> repaired.put(rs.getInt("id"), rs.getInt("like_count")));
+        return repaired;
     }
 
     private Film mapRowToFilm(ResultSet rs, int rowNum) throws SQLException {
@@ -119,24 +328,56 @@ public class FilmDbStorage implements FilmStorage {
         film.setDescription(rs.getString("description"));
         film.setReleaseDate(rs.getDate("release_date").toLocalDate());
         film.setDuration(rs.getInt("duration"));
-        MpaRating mpa = new MpaRating();
-        mpa.setId(rs.getInt("mpa_id"));
-        mpa.setName(rs.getString("mpa_name"));
-        film.setMpa(mpa);
-
-        String genreSql = "SELECT g.id, g.name FROM film_genres fg JOIN genres g ON fg.genre_id = g.id WHERE fg.film_id = ? ORDER BY g.id";
-        List<Genre> genres = jdbcTemplate.query(genreSql, (rsGenre, rowNumGenre) -> {
-            Genre genre = new Genre();
-            genre.setId(rsGenre.getInt("id"));
-            genre.setName(rsGenre.getString("name"));
-            return genre;
-        }, film.getId());
-        film.setGenres(genres.stream().sorted(Comparator.comparingInt(Genre::getId)).collect(Collectors.toList()));
-
-        String likesSql = "SELECT user_id FROM likes WHERE film_id = ?";
-        Set<Integer> likes = new HashSet<>(jdbcTemplate.queryForList(likesSql, Integer.class, film.getId()));
-        film.setLikes(likes);
-
+        film.setMpa(referenceData.getMpa(rs.getInt("mpa_id")));
+        film.setLikeCount(rs.getInt("like_count"));
+        film.setVersion(rs.getLong("version"));
+        film.setUpdatedAt(rs.getTimestamp("updated_at").toInstant());
         return film;
     }
-}
\ No newline at end of file
+
+    private Set<Integer> genreIdsOf(Film film) {
+        if (film.getGenres() == null) {
+            return Set.of();
+        }
+        return film.getGenres().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private void writeGenres(int filmId, Set<Integer> currentGenreIds, Set<Integer> genreIds) {
+        List<Object[]> removed = currentGenreIds.stream()
+                .filter(genreId -> !genreIds.contains(genreId))
+                .map(genreId -> new Object[]{filmId, genreId})
+                .collect(Collectors.toList());
+        List<Object[]> added = genreIds.stream()
+                .filter(genreId -> !currentGenreIds.contains(genreId))
+                .map(genreId -> new Object[]{filmId, genreId})
+                .collect(Collectors.toList());
+        if (!removed.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM film_genres WHERE film_id = ? AND genre_id = ?", removed);
+        }
+        if (!added.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)", added);
+        }
+    }
+
+    // Жанры загружаются одним запросом на всю выборку, а не отдельно для каждого фильма;
+    // сами объекты жанров и MPA берутся из справочника, а не создаются на каждую строку
+    private List<Film> hydrate(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        Map<Integer, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            filmsById.put(film.getId(), film);
+        }
+        Integer[] filmIds = filmsById.keySet().toArray(new Integer[0]);
+
+        String genreSql = "SELECT film_id, genre_id FROM film_genres WHERE film_id = ANY(?) ORDER BY film_id, genre_id";
+        jdbcTemplate.query(genreSql, rs -> {
+            filmsById.get(rs.getInt("film_id")).getGenres().add(referenceData.getGenre(rs.getInt("genre_id")));
+        }, (Object) filmIds);
+
+        return films;
+    }
+}
@@ -1,21 +1,45 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
+import ru.yandex.practicum.filmorate.model.EntityVersion;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeChange;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     Film create(Film film);
 
+    List<Film> createAll(List<Film> films);
+
     Film update(Film film);
 
     List<Film> getAll();
 
+    List<Film> getPage(int afterId, int limit);
+
+    void streamAll(Consumer<Film> consumer);
+
     Film getFilmById(int id);
 
-    void addLike(int filmId, int userId);
+    EntityVersion getVersion(int id);
+
+    List<Film> getFilmsByIds(List<Integer> ids);
+
+    boolean addLike(int filmId, int userId);
+
+    boolean removeLike(int filmId, int userId);
+
+    Map<Integer, Integer> applyLikeChanges(List<LikeChange> changes);
+
+    int[] getLikes(int filmId, int afterUserId, int limit);
+
+    void streamLikes(BiConsumer<Integer, Integer> consumer);
 
-    void removeLike(int filmId, int userId);
+    List<Film> getPopularFilms(int count, Integer genreId, Integer mpaId, Integer year);
 
-    List<Film> getPopularFilms(int count);
+    // Возвращает исправленные счётчики лайков по ID фильмов
+    Map<Integer, Integer> reconcileLikeCounts();
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class FilmStorageConfig {
+
+    @Bean("filmStorage")
+    public FilmStorage filmStorage(@Qualifier("filmDbStorage") FilmStorage filmDbStorage,
+                                   @Value("${filmorate.cache.films.enabled}") boolean cacheEnabled,
+                                   @Value("${filmorate.cache.films.maximum-size}") long maximumSize,
+                                   @Value("${filmorate.cache.films.expire-after-write}") Duration expireAfterWrite) {
+        if (!cacheEnabled) {
+            return filmDbStorage;
+        }
+        return new CachingFilmStorage(filmDbStorage, maximumSize, expireAfterWrite);
+    }
+}
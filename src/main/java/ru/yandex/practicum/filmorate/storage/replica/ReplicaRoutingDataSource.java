@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Направляет соединения в транзакциях только для чтения на реплики по кругу, всё остальное — на основную БД.
+ * После пишущей транзакции поток «прилипает» к основной БД до вызова {@link #releasePrimary()},
+ * чтобы чтения в том же запросе видели только что записанные данные.
+ * Соединения вне транзакций тоже берутся из основной БД, но поток к ней не привязывают.
+ * Чтение, результат которого надолго сохраняется в памяти, можно явно выполнить на основной БД
+ * через {@link #readFromPrimary(Supplier)}.
+ * Работает поверх LazyConnectionDataSourceProxy: соединение берётся, когда признак read-only уже выставлен.
+ * Пулы реплик принадлежат этому источнику и закрываются вместе с ним, основной БД управляет её владелец.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+    private static final String PRIMARY = "primary";
+    private static final ThreadLocal<Boolean> STICKY_PRIMARY = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> FORCED_PRIMARY = new ThreadLocal<>();
+
+    private final List<DataSource> replicas;
+    private final String[] replicaKeys;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        this.replicas = List.copyOf(replicas);
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicaKeys = new String[replicas.size()];
+        for (int i = 0; i < replicas.size(); i++) {
+            replicaKeys[i] = "replica-" + i;
+            targets.put(replicaKeys[i], replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    public static void releasePrimary() {
+        STICKY_PRIMARY.remove();
+    }
+
+    // Привязка действует только на время чтения и не снимает привязку, полученную после записи
+    public static <T> T readFromPrimary(Supplier<T> read) {
+        Boolean previous = FORCED_PRIMARY.get();
+        FORCED_PRIMARY.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            if (previous == null) {
+                FORCED_PRIMARY.remove();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (DataSource replica : replicas) {
+            if (replica instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                STICKY_PRIMARY.set(Boolean.TRUE);
+            }
+            return PRIMARY;
+        }
+        if (replicaKeys.length == 0 || STICKY_PRIMARY.get() != null || FORCED_PRIMARY.get() != null) {
+            return PRIMARY;
+        }
+        return replicaKeys[Math.floorMod(nextReplica.getAndIncrement(), replicaKeys.length)];
+    }
+}
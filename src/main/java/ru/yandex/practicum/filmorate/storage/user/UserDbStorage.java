@@ -1,26 +1,45 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.EntityVersion;
 import ru.yandex.practicum.filmorate.model.User;
+import java.sql.Date;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
 
+@Timed("filmorate.storage")
 @Component("userDbStorage")
-@RequiredArgsConstructor
 public class UserDbStorage implements UserStorage {
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final String VERSION_BUMP = "version = version + 1, updated_at = CURRENT_TIMESTAMP";
+
     private final JdbcTemplate jdbcTemplate;
+    private final SimpleJdbcInsert jdbcInsert;
+
+    public UserDbStorage(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("users")
+                .usingColumns("email", "login", "name", "birthday")
+                .usingGeneratedKeyColumns("id");
+    }
 
     @Override
+    @Transactional
     public User create(User user) {
         normalizeName(user);
-        SimpleJdbcInsert jdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("users")
-                .usingGeneratedKeyColumns("id");
         Map<String, Object> values = new HashMap<>();
         values.put("email", user.getEmail());
         values.put("login", user.getLogin());
@@ -32,9 +51,43 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
+    @Transactional
+    public List<User> createAll(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        users.forEach(this::normalizeName);
+        String sql = "INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)";
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(sql, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        User user = users.get(i);
+                        ps.setString(1, user.getEmail());
+                        ps.setString(2, user.getLogin());
+                        ps.setString(3, user.getName());
+                        ps.setDate(4, user.getBirthday() == null ? null : Date.valueOf(user.getBirthday()));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return users.size();
+                    }
+                }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).setId(((Number) keys.get(i).values().iterator().next()).intValue());
+        }
+        return users;
+    }
+
+    @Override
+    @Transactional
     public User update(User user) {
         normalizeName(user);
-        String sql = "UPDATE users SET email = ?, login = ?, name = ?, birthday = ? WHERE id = ?";
+        String sql = "UPDATE users SET email = ?, login = ?, name = ?, birthday = ?, " + VERSION_BUMP + " WHERE id = ?";
         int rowsAffected = jdbcTemplate.update(sql,
                 user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(), user.getId());
         if (rowsAffected == 0) {
@@ -44,12 +97,31 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<User> getAll() {
         String sql = "SELECT * FROM users";
         return jdbcTemplate.query(sql, this::mapRowToUser);
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public List<User> getPage(int afterId, int limit) {
+        String sql = "SELECT * FROM users WHERE id > ? ORDER BY id LIMIT ?";
+        return jdbcTemplate.query(sql, this::mapRowToUser, afterId, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        String sql = "SELECT * FROM users ORDER BY id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(mapRowToUser(rs, rs.getRow())));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public User getUserById(int id) {
         String sql = "SELECT * FROM users WHERE id = ?";
         return jdbcTemplate.query(sql, this::mapRowToUser, id)
@@ -59,25 +131,86 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public EntityVersion getVersion(int id) {
+        String sql = "SELECT version, updated_at FROM users WHERE id = ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) ->
+                        new EntityVersion(rs.getLong("version"), rs.getTimestamp("updated_at").toInstant()), id)
+                .stream()
+                .findFirst()
+                .orElseThrow(() -> new NotFoundException("Пользователь с ID " + id + " не найден"));
+    }
+
+    // Пользователи загружаются одним запросом и возвращаются в порядке переданных ID
+    @Override
+    @Transactional(readOnly = true)
+    public List<User> getUsersByIds(int[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        Integer[] boxedIds = Arrays.stream(ids).boxed().toArray(Integer[]::new);
+        String sql = "SELECT * FROM users WHERE id = ANY(?)";
+        Map<Integer, User> usersById = new HashMap<>();
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            User user = mapRowToUser(rs, rs.getRow());
+            usersById.put(user.getId(), user);
+        }, (Object) boxedIds);
+        List<User> users = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            User user = usersById.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    @Override
+    @Transactional
     public void addFriend(int userId, int friendId) {
         getUserById(userId);
         getUserById(friendId);
         String sql = "INSERT INTO friendships (user_id, friend_id, confirmed) VALUES (?, ?, true)";
         jdbcTemplate.update(sql, userId, friendId);
+        jdbcTemplate.update("UPDATE users SET " + VERSION_BUMP + " WHERE id = ?", userId);
     }
 
     @Override
+    @Transactional
     public void removeFriend(int userId, int friendId) {
         String sql = "DELETE FROM friendships WHERE user_id = ? AND friend_id = ?";
-        jdbcTemplate.update(sql, userId, friendId);
+        if (jdbcTemplate.update(sql, userId, friendId) > 0) {
+            jdbcTemplate.update("UPDATE users SET " + VERSION_BUMP + " WHERE id = ?", userId);
+        }
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Set<Integer> getFriends(int userId) {
         String sql = "SELECT friend_id FROM friendships WHERE user_id = ? AND confirmed = true";
         return new HashSet<>(jdbcTemplate.queryForList(sql, Integer.class, userId));
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<User> getFriendUsers(int userId) {
+        String sql = "SELECT u.* FROM friendships f JOIN users u ON u.id = f.friend_id " +
+                "WHERE f.user_id = ? AND f.confirmed = true ORDER BY u.id";
+        return jdbcTemplate.query(sql, this::mapRowToUser, userId);
+    }
+
+    // Пересечение списков друзей считает БД, пользователи возвращаются тем же запросом
+    @Override
+    @Transactional(readOnly = true)
+    public List<User> getCommonFriendUsers(int userId, int otherId) {
+        String sql = "SELECT u.* FROM friendships f1 " +
+                "JOIN friendships f2 ON f2.friend_id = f1.friend_id " +
+                "JOIN users u ON u.id = f1.friend_id " +
+                "WHERE f1.user_id = ? AND f1.confirmed = true AND f2.user_id = ? AND f2.confirmed = true " +
+                "ORDER BY u.id";
+        return jdbcTemplate.query(sql, this::mapRowToUser, userId, otherId);
+    }
+
     private User mapRowToUser(ResultSet rs, int rowNum) throws SQLException {
         User user = new User();
         user.setId(rs.getInt("id"));
@@ -85,6 +218,8 @@ public class UserDbStorage implements UserStorage {
         user.setLogin(rs.getString("login"));
         user.setName(rs.getString("name"));
         user.setBirthday(rs.getDate("birthday").toLocalDate());
+        user.setVersion(rs.getLong("version"));
+        user.setUpdatedAt(rs.getTimestamp("updated_at").toInstant());
         return user;
     }
 
@@ -1,21 +1,39 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import ru.yandex.practicum.filmorate.model.EntityVersion;
 import ru.yandex.practicum.filmorate.model.User;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public interface UserStorage {
     User create(User user);
 
+    List<User> createAll(List<User> users);
+
     User update(User user);
 
     List<User> getAll();
 
+    List<User> getPage(int afterId, int limit);
+
+    void streamAll(Consumer<User> consumer);
+
     User getUserById(int id);
 
+    EntityVersion getVersion(int id);
+
+    List<User> getUsersByIds(int[] ids);
+
     void addFriend(int userId, int friendId);
 
     void removeFriend(int userId, int friendId);
 
     Set<Integer> getFriends(int userId);
+
+    // Друзья пользователя одним запросом, по возрастанию ID
+    List<User> getFriendUsers(int userId);
+
+    // Общие друзья двух пользователей одним запросом, по возрастанию ID
+    List<User> getCommonFriendUsers(int userId, int otherId);
 }
\ No newline at end of file
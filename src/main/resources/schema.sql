@@ -12,6 +12,8 @@ CREATE TABLE IF NOT EXISTS users (
     login VARCHAR(50) NOT NULL,
     name VARCHAR(50),
     birthday DATE NOT NULL,
+    version BIGINT NOT NULL DEFAULT 1,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     CONSTRAINT unique_email UNIQUE (email),
     CONSTRAINT unique_login UNIQUE (login)
 );
@@ -29,6 +31,9 @@ CREATE TABLE IF NOT EXISTS films (
     release_date DATE NOT NULL,
     duration INTEGER NOT NULL,
     mpa_id INTEGER NOT NULL,
+    like_count INTEGER NOT NULL DEFAULT 0,
+    version BIGINT NOT NULL DEFAULT 1,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (mpa_id) REFERENCES mpa_ratings(id)
 );
 
@@ -66,4 +71,9 @@ CREATE TABLE IF NOT EXISTS friendships (
 
 CREATE INDEX IF NOT EXISTS idx_film_genre ON film_genres(film_id);
 CREATE INDEX IF NOT EXISTS idx_likes_film ON likes(film_id);
-CREATE INDEX IF NOT EXISTS idx_friendships_user ON friendships(user_id);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS idx_films_like_count ON films(like_count DESC, id);
+CREATE INDEX IF NOT EXISTS idx_films_mpa_like_count ON films(mpa_id, like_count DESC, id);
+CREATE INDEX IF NOT EXISTS idx_films_release_date ON films(release_date);
+CREATE INDEX IF NOT EXISTS idx_film_genres_genre ON film_genres(genre_id, film_id);
+CREATE INDEX IF NOT EXISTS idx_friendships_user ON friendships(user_id);
+CREATE INDEX IF NOT EXISTS idx_likes_user_film ON likes(user_id, film_id);
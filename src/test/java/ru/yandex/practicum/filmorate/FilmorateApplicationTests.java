@@ -6,16 +6,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.service.FriendGraphIndex;
+import ru.yandex.practicum.filmorate.service.FriendRecommender;
+import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
 import ru.yandex.practicum.filmorate.storage.MpaDbStorage;
 import ru.yandex.practicum.filmorate.storage.FriendshipDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReferenceDataRegistry;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -23,13 +30,16 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Import({UserDbStorage.class, FilmDbStorage.class, GenreDbStorage.class, MpaDbStorage.class, FriendshipDbStorage.class})
+@Import({UserDbStorage.class, FilmDbStorage.class, GenreDbStorage.class, MpaDbStorage.class, FriendshipDbStorage.class,
+		ReferenceDataRegistry.class})
 class FilmorateApplicationTests {
 	private final UserDbStorage userStorage;
 	private final FilmDbStorage filmStorage;
 	private final GenreDbStorage genreDbStorage;
 	private final MpaDbStorage mpaDbStorage;
 	private final FriendshipDbStorage friendshipDbStorage;
+	private final ReferenceDataRegistry referenceDataRegistry;
+	private final JdbcTemplate jdbcTemplate;
 
 	@Test
 	void testGetUserById() {
@@ -227,11 +237,13 @@ class FilmorateApplicationTests {
 
 		filmStorage.addLike(savedFilm.getId(), savedUser.getId());
 		Film likedFilm = filmStorage.getFilmById(savedFilm.getId());
-		assertThat(likedFilm.getLikes()).contains(savedUser.getId());
+		assertThat(likedFilm.getLikeCount()).isEqualTo(1);
+		assertThat(filmStorage.getLikes(savedFilm.getId(), 0, 10)).containsExactly(savedUser.getId());
 
 		filmStorage.removeLike(savedFilm.getId(), savedUser.getId());
 		Film unlikedFilm = filmStorage.getFilmById(savedFilm.getId());
-		assertThat(unlikedFilm.getLikes()).isEmpty();
+		assertThat(unlikedFilm.getLikeCount()).isZero();
+		assertThat(filmStorage.getLikes(savedFilm.getId(), 0, 10)).isEmpty();
 	}
 
 	@Test
@@ -261,11 +273,11 @@ class FilmorateApplicationTests {
 
 		filmStorage.addLike(savedFilm1.getId(), savedUser.getId());
 
-		List<Film> popularFilms = filmStorage.getPopularFilms(2);
+		List<Film> popularFilms = filmStorage.getPopularFilms(2, null, null, null);
 
 		assertThat(popularFilms).hasSize(2);
 		assertThat(popularFilms.get(0).getName()).isEqualTo("Popular Film");
-		assertThat(popularFilms.get(0).getLikes()).contains(savedUser.getId());
+		assertThat(popularFilms.get(0).getLikeCount()).isEqualTo(1);
 	}
 
 	@Test
@@ -306,6 +318,21 @@ class FilmorateApplicationTests {
 		assertThrows(NotFoundException.class, () -> mpaDbStorage.getById(999));
 	}
 
+	@Test
+	void testReferenceDataRegistry() {
+		assertThat(referenceDataRegistry.getGenres()).hasSize(6);
+		assertThat(referenceDataRegistry.getMpaRatings()).hasSize(5);
+		assertThat(referenceDataRegistry.getGenre(1)).hasFieldOrPropertyWithValue("name", "Комедия");
+		assertThat(referenceDataRegistry.getMpa(3)).hasFieldOrPropertyWithValue("name", "PG-13");
+		assertThrows(NotFoundException.class, () -> referenceDataRegistry.getGenre(999));
+		assertThrows(NotFoundException.class, () -> referenceDataRegistry.getMpa(-1));
+
+		Film film = filmStorage.create(newFilm("Film", 2));
+		Film filmFromDb = filmStorage.getFilmById(film.getId());
+		assertThat(filmFromDb.getMpa()).isSameAs(referenceDataRegistry.getMpa(1));
+		assertThat(filmFromDb.getGenres().get(0)).isSameAs(referenceDataRegistry.getGenre(2));
+	}
+
 	@Test
 	void testConfirmFriendship() {
 		User user1 = new User();
@@ -348,4 +375,276 @@ class FilmorateApplicationTests {
 		assertThat(friendships).hasSize(1);
 		assertThat(friendships.get(0).getFriendId()).isEqualTo(savedUser2.getId());
 	}
-}
\ No newline at end of file
+
+	@Test
+	void testFilmQueriesCountDoesNotDependOnFilmsNumber() {
+		QueryCountingJdbcTemplate countingJdbcTemplate = new QueryCountingJdbcTemplate(jdbcTemplate.getDataSource());
+		FilmDbStorage countingFilmStorage = new FilmDbStorage(countingJdbcTemplate, referenceDataRegistry);
+
+		User user = new User();
+		user.setEmail("test@example.com");
+		user.setLogin("testLogin");
+		user.setBirthday(LocalDate.of(2000, 1, 1));
+		User savedUser = userStorage.create(user);
+
+		Film firstFilm = filmStorage.create(newFilm("Film 1", 1));
+		filmStorage.addLike(firstFilm.getId(), savedUser.getId());
+
+		countingJdbcTemplate.reset();
+		countingFilmStorage.getAll();
+		int queriesForOneFilm = countingJdbcTemplate.getStatementCount();
+
+		for (int i = 2; i <= 10; i++) {
+			Film film = filmStorage.create(newFilm("Film " + i, i % 6 + 1));
+			filmStorage.addLike(film.getId(), savedUser.getId());
+		}
+
+		countingJdbcTemplate.reset();
+		List<Film> films = countingFilmStorage.getAll();
+		assertThat(films).hasSize(10);
+		assertThat(films).allSatisfy(film -> {
+			assertThat(film.getGenres()).hasSize(1);
+			assertThat(film.getLikeCount()).isEqualTo(1);
+		});
+		assertThat(countingJdbcTemplate.getStatementCount()).isEqualTo(queriesForOneFilm);
+
+		countingJdbcTemplate.reset();
+		assertThat(countingFilmStorage.getPopularFilms(10, null, null, null)).hasSize(10);
+		assertThat(countingJdbcTemplate.getStatementCount()).isEqualTo(queriesForOneFilm);
+
+		countingJdbcTemplate.reset();
+		countingFilmStorage.getFilmById(firstFilm.getId());
+		assertThat(countingJdbcTemplate.getStatementCount()).isEqualTo(queriesForOneFilm);
+	}
+
+	@Test
+	void testKeysetPaginationAndStreaming() {
+		List<Integer> filmIds = new ArrayList<>();
+		for (int i = 1; i <= 5; i++) {
+			filmIds.add(filmStorage.create(newFilm("Film " + i, 1)).getId());
+		}
+
+		List<Film> firstPage = filmStorage.getPage(0, 2);
+		assertThat(firstPage).extracting(Film::getId).containsExactly(filmIds.get(0), filmIds.get(1));
+		assertThat(firstPage.get(0).getGenres()).hasSize(1);
+
+		List<Film> lastPage = filmStorage.getPage(filmIds.get(3), 2);
+		assertThat(lastPage).extracting(Film::getId).containsExactly(filmIds.get(4));
+
+		List<Integer> streamedIds = new ArrayList<>();
+		filmStorage.streamAll(film -> streamedIds.add(film.getId()));
+		assertThat(streamedIds).containsExactlyElementsOf(filmIds);
+
+		for (int i = 1; i <= 3; i++) {
+			User user = new User();
+			user.setEmail("test" + i + "@example.com");
+			user.setLogin("testLogin" + i);
+			user.setBirthday(LocalDate.of(2000, 1, 1));
+			userStorage.create(user);
+		}
+		List<User> users = userStorage.getPage(0, 2);
+		assertThat(users).hasSize(2);
+		assertThat(userStorage.getPage(users.get(1).getId(), 2)).hasSize(1);
+
+		List<User> streamedUsers = new ArrayList<>();
+		userStorage.streamAll(streamedUsers::add);
+		assertThat(streamedUsers).hasSize(3);
+	}
+
+	@Test
+	void testLikeCountIsMaintainedAndReconciled() {
+		User user = new User();
+		user.setEmail("test@example.com");
+		user.setLogin("testLogin");
+		user.setBirthday(LocalDate.of(2000, 1, 1));
+		User savedUser = userStorage.create(user);
+		Film film = filmStorage.create(newFilm("Film", 1));
+		String countSql = "SELECT like_count FROM films WHERE id = ?";
+
+		assertThat(filmStorage.addLike(film.getId(), savedUser.getId())).isTrue();
+		assertThat(filmStorage.addLike(film.getId(), savedUser.getId())).isFalse();
+		assertThat(jdbcTemplate.queryForObject(countSql, Integer.class, film.getId())).isEqualTo(1);
+
+		jdbcTemplate.update("UPDATE films SET like_count = 42 WHERE id = ?", film.getId());
+		assertThat(filmStorage.reconcileLikeCounts()).containsExactly(Map.entry(film.getId(), 1));
+		assertThat(jdbcTemplate.queryForObject(countSql, Integer.class, film.getId())).isEqualTo(1);
+
+		film.setLikeCount(99);
+		assertThat(filmStorage.update(film).getLikeCount()).isEqualTo(1);
+
+		assertThat(filmStorage.removeLike(film.getId(), savedUser.getId())).isTrue();
+		assertThat(filmStorage.removeLike(film.getId(), savedUser.getId())).isFalse();
+		assertThat(jdbcTemplate.queryForObject(countSql, Integer.class, film.getId())).isZero();
+	}
+
+	@Test
+	void testGetPopularFilmsWithFilters() {
+		User user = new User();
+		user.setEmail("test@example.com");
+		user.setLogin("testLogin");
+		user.setBirthday(LocalDate.of(2000, 1, 1));
+		User savedUser = userStorage.create(user);
+
+		Film comedy = filmStorage.create(newFilm("Comedy", 1));
+		Film drama = newFilm("Drama", 2);
+		drama.setReleaseDate(LocalDate.of(2023, 5, 1));
+		drama.setMpa(mpaDbStorage.getById(3));
+		drama = filmStorage.create(drama);
+		Film otherComedy = filmStorage.create(newFilm("Other comedy", 1));
+		filmStorage.addLike(otherComedy.getId(), savedUser.getId());
+
+		assertThat(filmStorage.getPopularFilms(10, 1, null, null))
+				.extracting(Film::getId)
+				.containsExactly(otherComedy.getId(), comedy.getId());
+		assertThat(filmStorage.getPopularFilms(10, null, 3, null))
+				.extracting(Film::getId)
+				.containsExactly(drama.getId());
+		assertThat(filmStorage.getPopularFilms(10, null, null, 2023))
+				.extracting(Film::getId)
+				.containsExactly(drama.getId());
+		assertThat(filmStorage.getPopularFilms(10, 2, 1, null)).isEmpty();
+	}
+
+	@Test
+	void testUpdateFilmWritesOnlyChangedGenres() {
+		QueryCountingJdbcTemplate countingJdbcTemplate = new QueryCountingJdbcTemplate(jdbcTemplate.getDataSource());
+		FilmDbStorage countingFilmStorage = new FilmDbStorage(countingJdbcTemplate, referenceDataRegistry);
+		Film film = newFilm("Film", 1);
+		film.setGenres(List.of(genreDbStorage.getById(1), genreDbStorage.getById(2), genreDbStorage.getById(1)));
+
+		countingJdbcTemplate.reset();
+		Film savedFilm = countingFilmStorage.create(film);
+		assertThat(countingJdbcTemplate.getStatementCount()).isEqualTo(2);
+
+		countingJdbcTemplate.reset();
+		countingFilmStorage.update(savedFilm);
+		assertThat(countingJdbcTemplate.getStatementCount()).isEqualTo(2);
+
+		savedFilm.setGenres(List.of(genreDbStorage.getById(2), genreDbStorage.getById(3), genreDbStorage.getById(4)));
+		countingJdbcTemplate.reset();
+		countingFilmStorage.update(savedFilm);
+		assertThat(countingJdbcTemplate.getStatementCount()).isEqualTo(4);
+
+		assertThat(filmStorage.getFilmById(savedFilm.getId()).getGenres())
+				.extracting(Genre::getId)
+				.containsExactly(2, 3, 4);
+	}
+
+	@Test
+	void testCreateAllInsertsFilmsAndUsersInBatches() {
+		QueryCountingJdbcTemplate countingJdbcTemplate = new QueryCountingJdbcTemplate(jdbcTemplate.getDataSource());
+		FilmDbStorage countingFilmStorage = new FilmDbStorage(countingJdbcTemplate, referenceDataRegistry);
+		List<Film> films = new ArrayList<>();
+		for (int i = 1; i <= 20; i++) {
+			films.add(newFilm("Film " + i, i % 6 + 1));
+		}
+
+		countingJdbcTemplate.reset();
+		List<Film> savedFilms = countingFilmStorage.createAll(films);
+		assertThat(countingJdbcTemplate.getStatementCount()).isEqualTo(2);
+		assertThat(savedFilms).extracting(Film::getId).doesNotContainNull().doesNotHaveDuplicates();
+		assertThat(filmStorage.getFilmById(savedFilms.get(4).getId()))
+				.hasFieldOrPropertyWithValue("name", "Film 5");
+		assertThat(filmStorage.getFilmById(savedFilms.get(4).getId()).getGenres())
+				.extracting(Genre::getId)
+				.containsExactly(6);
+
+		List<User> users = new ArrayList<>();
+		for (int i = 1; i <= 3; i++) {
+			User user = new User();
+			user.setEmail("test" + i + "@example.com");
+			user.setLogin("testLogin" + i);
+			user.setBirthday(LocalDate.of(2000, 1, 1));
+			users.add(user);
+		}
+		List<User> savedUsers = userStorage.createAll(users);
+		assertThat(userStorage.getUserById(savedUsers.get(2).getId()))
+				.hasFieldOrPropertyWithValue("login", "testLogin3")
+				.hasFieldOrPropertyWithValue("name", "testLogin3");
+	}
+
+	@Test
+	void testFriendQueriesCountDoesNotDependOnFriendsNumber() {
+		QueryCountingJdbcTemplate countingJdbcTemplate = new QueryCountingJdbcTemplate(jdbcTemplate.getDataSource());
+		FriendGraphIndex friendGraph = new FriendGraphIndex(friendshipDbStorage);
+		UserService userService = new UserService(new UserDbStorage(countingJdbcTemplate), friendshipDbStorage,
+				friendGraph, new FriendRecommender(friendGraph, 100));
+		User user = userStorage.create(newUser(0));
+		User other = userStorage.create(newUser(1000));
+		List<Integer> friendIds = new ArrayList<>();
+		int queriesForFewFriends = 0;
+
+		for (int i = 1; i <= 10; i++) {
+			User friend = userStorage.create(newUser(i));
+			friendIds.add(friend.getId());
+			userService.addFriend(user.getId(), friend.getId());
+			if (i % 2 == 0) {
+				userService.addFriend(other.getId(), friend.getId());
+			}
+			if (i == 2) {
+				countingJdbcTemplate.reset();
+				assertThat(userService.getFriends(user.getId())).hasSize(2);
+				assertThat(userService.getCommonFriends(user.getId(), other.getId())).hasSize(1);
+				queriesForFewFriends = countingJdbcTemplate.getStatementCount();
+			}
+		}
+
+		countingJdbcTemplate.reset();
+		assertThat(userService.getFriends(user.getId()))
+				.extracting(User::getId)
+				.containsExactlyElementsOf(friendIds);
+		assertThat(userService.getCommonFriends(user.getId(), other.getId()))
+				.extracting(User::getId)
+				.containsExactly(friendIds.get(1), friendIds.get(3), friendIds.get(5), friendIds.get(7), friendIds.get(9));
+		assertThat(countingJdbcTemplate.getStatementCount()).isEqualTo(queriesForFewFriends);
+	}
+
+	@Test
+	void testStorageFriendQueriesRunOneStatementEach() {
+		QueryCountingJdbcTemplate countingJdbcTemplate = new QueryCountingJdbcTemplate(jdbcTemplate.getDataSource());
+		UserDbStorage countingStorage = new UserDbStorage(countingJdbcTemplate);
+		User user = userStorage.create(newUser(0));
+		User other = userStorage.create(newUser(1000));
+		List<Integer> friendIds = new ArrayList<>();
+
+		for (int i = 1; i <= 10; i++) {
+			User friend = userStorage.create(newUser(i));
+			friendIds.add(friend.getId());
+			userStorage.addFriend(user.getId(), friend.getId());
+			if (i % 2 == 0) {
+				userStorage.addFriend(other.getId(), friend.getId());
+			}
+		}
+
+		countingJdbcTemplate.reset();
+		assertThat(countingStorage.getFriendUsers(user.getId()))
+				.extracting(User::getId)
+				.containsExactlyElementsOf(friendIds);
+		assertThat(countingJdbcTemplate.getStatementCount()).isEqualTo(1);
+
+		countingJdbcTemplate.reset();
+		assertThat(countingStorage.getCommonFriendUsers(user.getId(), other.getId()))
+				.extracting(User::getId)
+				.containsExactly(friendIds.get(1), friendIds.get(3), friendIds.get(5), friendIds.get(7), friendIds.get(9));
+		assertThat(countingJdbcTemplate.getStatementCount()).isEqualTo(1);
+	}
+
+	private User newUser(int number) {
+		User user = new User();
+		user.setEmail("user" + number + "@example.com");
+		user.setLogin("user" + number);
+		user.setBirthday(LocalDate.of(2000, 1, 1));
+		return user;
+	}
+
+	private Film newFilm(String name, int genreId) {
+		Film film = new Film();
+		film.setName(name);
+		film.setDescription("Description");
+		film.setReleaseDate(LocalDate.of(2000, 1, 1));
+		film.setDuration(120);
+		film.setMpa(mpaDbStorage.getById(1));
+		film.setGenres(List.of(genreDbStorage.getById(genreId)));
+		return film;
+	}
+}
@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * JdbcTemplate, считающий количество выполненных SQL-выражений.
+ * Пакетные операции считаются одним выражением, так как уходят в БД одним обращением.
+ */
+public class QueryCountingJdbcTemplate extends JdbcTemplate {
+    private int statementCount;
+
+    public QueryCountingJdbcTemplate(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    public void reset() {
+        statementCount = 0;
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        statementCount++;
+        super.applyStatementSettings(stmt);
+    }
+}
@@ -0,0 +1,168 @@
+package ru.yandex.practicum.filmorate;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FriendshipDbStorage;
+import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.film.CachingFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет, что пути хранилищ не закрепляют виртуальный поток за платформенным.
+ * Пул соединений намеренно меньше числа потоков, чтобы запросы ждали соединение и блокировки строк.
+ */
+@JdbcTest
+@AutoConfigureTestDatabase
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+		"spring.datasource.url=jdbc:h2:mem:pinning;DB_CLOSE_DELAY=-1",
+		"spring.datasource.hikari.maximum-pool-size=1"
+})
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Import({UserDbStorage.class, FilmDbStorage.class, GenreDbStorage.class, MpaDbStorage.class, FriendshipDbStorage.class,
+		ReferenceDataRegistry.class})
+class VirtualThreadPinningTest {
+	private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+	private static final int USERS = 20;
+	private static final int FILMS = 100;
+	private static final int TASKS = 500;
+	private static final int TIMEOUT_SECONDS = 30;
+
+	private final UserDbStorage userStorage;
+	private final FilmDbStorage filmStorage;
+	private final FriendshipDbStorage friendshipStorage;
+
+	@Test
+	void testStoragePathsDoNotPinVirtualThreads() throws Exception {
+		CachingFilmStorage cachingStorage = new CachingFilmStorage(filmStorage, 100, Duration.ofMinutes(10));
+		List<Integer> userIds = new ArrayList<>();
+		List<Integer> filmIds = new ArrayList<>();
+		for (int i = 0; i < USERS; i++) {
+			userIds.add(userStorage.create(user(i)).getId());
+		}
+		for (int i = 0; i < FILMS; i++) {
+			filmIds.add(filmStorage.create(film(i)).getId());
+		}
+
+		List<RecordedEvent> pinned = new CopyOnWriteArrayList<>();
+		try (RecordingStream recording = new RecordingStream()) {
+			recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+			recording.onEvent(PINNED_EVENT, pinned::add);
+			recording.startAsync();
+
+			// При закреплении потоки-носители могут взаимно заблокироваться, поэтому ожидание ограничено
+			ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+			try {
+				List<Future<?>> tasks = new ArrayList<>();
+				for (int i = 0; i < TASKS; i++) {
+					int userId = userIds.get(i % USERS);
+					int filmId = filmIds.get(i % FILMS);
+					int friendId = userIds.get((i / USERS + 1 + i % USERS) % USERS);
+					int pageStart = i % FILMS / 5 * 5;
+					int operation = i % 5;
+					tasks.add(executor.submit(() -> {
+						switch (operation) {
+							case 0 -> cachingStorage.getFilmById(filmId).toString();
+							case 1 -> cachingStorage.getFilmsByIds(filmIds.subList(pageStart, pageStart + 5));
+							case 2 -> cachingStorage.addLike(filmId, userId);
+							case 3 -> cachingStorage.removeLike(filmId, userId);
+							default -> {
+								if (userId != friendId && friendshipStorage.getFriendshipsByUserId(userId).stream()
+										.noneMatch(friendship -> friendship.getFriendId() == friendId)) {
+									try {
+										userStorage.addFriend(userId, friendId);
+									} catch (RuntimeException ignored) {
+										// Параллельная задача могла добавить ту же дружбу
+									}
+								}
+								userStorage.getFriendUsers(userId).toString();
+							}
+						}
+						return null;
+					}));
+				}
+				tasks.add(executor.submit(this::pinOnPurpose));
+				for (Future<?> task : tasks) {
+					task.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+			recording.stop();
+		}
+
+		assertThat(pinned).as("контрольное закрепление должно попасть в запись").anyMatch(this::isControl);
+		assertThat(pinned.stream().filter(event -> !isControl(event)).map(this::describe))
+				.as("закрепления виртуальных потоков вне контрольной задачи")
+				.isEmpty();
+	}
+
+	// Засыпание внутри synchronized гарантированно закрепляет виртуальный поток
+	private Void pinOnPurpose() throws InterruptedException {
+		synchronized (this) {
+			Thread.sleep(50);
+		}
+		return null;
+	}
+
+	private boolean isControl(RecordedEvent event) {
+		return event.getStackTrace() != null && event.getStackTrace().getFrames().stream()
+				.anyMatch(frame -> frame.getMethod().getName().equals("pinOnPurpose"));
+	}
+
+	private String describe(RecordedEvent event) {
+		if (event.getStackTrace() == null) {
+			return "без стека";
+		}
+		StringBuilder stack = new StringBuilder();
+		for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+			stack.append(frame.getMethod().getType().getName()).append('.').append(frame.getMethod().getName())
+					.append('\n');
+		}
+		return stack.toString();
+	}
+
+	private User user(int number) {
+		User user = new User();
+		user.setEmail("pinning" + number + "@example.com");
+		user.setLogin("pinning" + number);
+		user.setBirthday(LocalDate.of(2000, 1, 1));
+		return user;
+	}
+
+	private Film film(int number) {
+		Film film = new Film();
+		film.setName("Film " + number);
+		film.setDescription("Description " + number);
+		film.setReleaseDate(LocalDate.of(2000, 1, 1));
+		film.setDuration(100);
+		MpaRating mpa = new MpaRating();
+		mpa.setId(1);
+		film.setMpa(mpa);
+		return film;
+	}
+}
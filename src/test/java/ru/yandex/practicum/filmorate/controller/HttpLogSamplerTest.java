@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpLogSamplerTest {
+
+	@Test
+	void firstMatchingPatternWinsOverDefaultRate() {
+		HttpLogSampler sampler = new HttpLogSampler(0.05, "/films/popular:0.001, /films/*/like/*:0, /films/**:0.5");
+
+		assertThat(sampler.getSampleRate("/films/popular")).isEqualTo(0.001);
+		assertThat(sampler.getSampleRate("/films/7/like/3")).isZero();
+		assertThat(sampler.getSampleRate("/films/7")).isEqualTo(0.5);
+		assertThat(sampler.getSampleRate("/users/1")).isEqualTo(0.05);
+	}
+
+	@Test
+	void emptyConfigurationUsesDefaultRate() {
+		HttpLogSampler sampler = new HttpLogSampler(1, "");
+
+		assertThat(sampler.getSampleRate("/genres")).isEqualTo(1);
+	}
+}
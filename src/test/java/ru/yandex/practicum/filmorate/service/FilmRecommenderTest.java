@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class FilmRecommenderTest {
+
+	@Test
+	void testRecommendationsFollowIncrementalMatrixUpdates() {
+		LikeMatrix likeMatrix = newLikeMatrix(1, 10, 1, 11, 2, 10, 3, 12);
+		FilmRecommender recommender = new FilmRecommender(likeMatrix);
+
+		assertThat(recommender.recommend(2, 10)).containsExactly(11);
+		assertThat(recommender.recommend(3, 10)).isEmpty();
+
+		likeMatrix.addLike(12, 1);
+		likeMatrix.removeLike(10, 2);
+
+		assertThat(recommender.recommend(2, 10)).isEmpty();
+		assertThat(recommender.recommend(3, 10)).containsExactly(10, 11);
+	}
+
+	@Test
+	void testRecommendsUnseenFilmsOfSimilarUsers() {
+		// Пользователь 2 почти совпадает по вкусам с 1, пользователь 3 — лишь частично
+		LikeMatrix likeMatrix = newLikeMatrix(1, 10, 1, 11, 1, 12,
+				2, 10, 2, 11, 2, 12, 2, 20,
+				3, 10, 3, 30, 3, 31, 3, 32,
+				4, 40);
+		FilmRecommender recommender = new FilmRecommender(likeMatrix);
+
+		assertThat(recommender.recommend(1, 10)).containsExactly(20, 30, 31, 32);
+		assertThat(recommender.recommend(1, 1)).containsExactly(20);
+		assertThat(recommender.recommend(5, 10)).isEmpty();
+
+		likeMatrix.addLike(20, 1);
+		likeMatrix.addLike(40, 1);
+		assertThat(recommender.recommend(1, 10)).doesNotContain(20, 40).startsWith(30);
+	}
+
+	@SuppressWarnings("unchecked")
+	// Лайки передаются парами «пользователь, фильм» в порядке выдачи из БД
+	private LikeMatrix newLikeMatrix(int... likes) {
+		FilmStorage storage = mock(FilmStorage.class);
+		doAnswer(invocation -> {
+			BiConsumer<Integer, Integer> consumer = invocation.getArgument(0);
+			for (int i = 0; i < likes.length; i += 2) {
+				consumer.accept(likes[i], likes[i + 1]);
+			}
+			return null;
+		}).when(storage).streamLikes(any(BiConsumer.class));
+		LikeMatrix likeMatrix = new LikeMatrix(storage);
+		likeMatrix.rebuild();
+		return likeMatrix;
+	}
+}
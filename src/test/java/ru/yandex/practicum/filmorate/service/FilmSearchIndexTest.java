@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class FilmSearchIndexTest {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void testSearchByPrefixesRankedByFieldAndLikes() {
+		FilmStorage storage = mock(FilmStorage.class);
+		doAnswer(invocation -> {
+			Consumer<Film> consumer = invocation.getArgument(0);
+			consumer.accept(film(1, "Звёздные войны", "Космическая опера"));
+			consumer.accept(film(2, "Космос", "Документальный фильм о звёздах"));
+			consumer.accept(film(3, "Звездопад", "Драма"));
+			consumer.accept(film(4, "Матрица", "Фильм о виртуальной реальности"));
+			return null;
+		}).when(storage).streamAll(any(Consumer.class));
+		PopularityLeaderboard leaderboard = mock(PopularityLeaderboard.class);
+		when(leaderboard.getLikes(anyInt())).thenReturn(0);
+		when(leaderboard.getLikes(3)).thenReturn(100);
+		FilmSearchIndex index = new FilmSearchIndex(storage, leaderboard);
+		index.rebuild();
+
+		assertThat(index.search("звезд", 10)).containsExactly(3, 1, 2);
+		assertThat(index.search("ЗВЁЗДНЫЕ", 10)).containsExactly(1);
+		assertThat(index.search("косм", 10)).containsExactly(2, 1);
+		assertThat(index.search("космическая звёзд", 10)).containsExactly(1);
+		assertThat(index.search("фильм", 1)).containsExactly(2);
+		assertThat(index.search("терминатор", 10)).isEmpty();
+		assertThat(index.search("  ,. ", 10)).isEmpty();
+
+		index.putFilm(film(4, "Звёздная матрица", "Перезапуск"));
+		assertThat(index.search("матрица", 10)).containsExactly(4);
+		assertThat(index.search("реальности", 10)).isEmpty();
+		assertThat(index.search("звёздн", 10)).containsExactly(1, 4);
+	}
+
+	private Film film(int id, String name, String description) {
+		Film film = new Film();
+		film.setId(id);
+		film.setName(name);
+		film.setDescription(description);
+		return film;
+	}
+}
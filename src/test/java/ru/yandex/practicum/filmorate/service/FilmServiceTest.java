@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class FilmServiceTest {
+	// Добавление фиксируется в «БД» и задерживается до обновления матрицы: удаление той же пары,
+	// пришедшее в этот момент, не должно обогнать его в памяти
+	@Test
+	void testConcurrentAddAndRemoveOfSameLikeKeepMatrixInDbOrder() throws Exception {
+		Set<Long> likes = ConcurrentHashMap.newKeySet();
+		CountDownLatch committed = new CountDownLatch(1);
+		FilmStorage filmStorage = mock(FilmStorage.class);
+		when(filmStorage.addLike(1, 10)).thenAnswer(invocation -> {
+			boolean added = likes.add(pair(1, 10));
+			committed.countDown();
+			Thread.sleep(50);
+			return added;
+		});
+		when(filmStorage.removeLike(1, 10)).thenAnswer(invocation -> likes.remove(pair(1, 10)));
+		LikeMatrix likeMatrix = new LikeMatrix(mock(FilmStorage.class));
+		FilmService filmService = new FilmService(filmStorage, mock(UserStorage.class),
+				mock(ReferenceDataRegistry.class), mock(PopularityLeaderboard.class), likeMatrix,
+				mock(FilmRecommender.class), mock(FilmSearchIndex.class), Optional.empty());
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> adder = executor.submit(() -> filmService.addLike(1, 10));
+			Future<?> remover = executor.submit(() -> {
+				committed.await();
+				filmService.removeLike(1, 10);
+				return null;
+			});
+			adder.get();
+			remover.get();
+		} finally {
+			executor.shutdown();
+		}
+
+		assertThat(likes).isEmpty();
+		assertThat(likeMatrix.hasLike(1, 10)).isFalse();
+		assertThat(likeMatrix.getUsers(1)).isEmpty();
+	}
+
+	private static long pair(int filmId, int userId) {
+		return (long) filmId << 32 | userId;
+	}
+}
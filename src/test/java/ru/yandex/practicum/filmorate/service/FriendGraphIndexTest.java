@@ -0,0 +1,132 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class FriendGraphIndexTest {
+	private static final int THREADS = 8;
+	private static final int USERS_PER_THREAD = 500;
+
+	@Test
+	void testSeededFromStorageAndAnswersFriendQueries() {
+		FriendGraphIndex index = newIndex(new int[][]{{1, 2}, {1, 3}, {1, 4}, {2, 3}, {2, 5}, {3, 6}, {5, 1}});
+
+		assertThat(index.getFriends(1)).containsExactly(2, 3, 4);
+		assertThat(index.getFriends(7)).isEmpty();
+		assertThat(index.getFollowers(1)).containsExactly(5);
+		assertThat(index.getCommonFriends(1, 2)).containsExactly(3);
+		assertThat(index.getFriendsOfFriends(1, 0, 10)).containsExactly(5, 6);
+		assertThat(index.getFriendsOfFriends(1, 0, 1)).containsExactly(5);
+		assertThat(index.getFriendsOfFriends(1, 5, 10)).containsExactly(6);
+
+		index.addFriend(2, 4);
+		index.removeFriend(1, 3);
+
+		assertThat(index.getFriends(1)).containsExactly(2, 4);
+		assertThat(index.getCommonFriends(1, 2)).containsExactly(4);
+		assertThat(index.getFollowers(3)).containsExactly(2);
+		assertThat(index.getFriendsOfFriends(1, 0, 10)).containsExactly(3, 5);
+	}
+
+	// Страницы, собранные слиянием, совпадают с полным перебором друзей друзей
+	@Test
+	void testFriendsOfFriendsPagesMatchFullScan() {
+		Random random = new Random(42);
+		List<int[]> edges = new ArrayList<>();
+		for (int userId = 1; userId <= 200; userId++) {
+			TreeSet<Integer> friendIds = new TreeSet<>();
+			for (int i = 0; i < 15; i++) {
+				friendIds.add(1 + random.nextInt(200));
+			}
+			friendIds.remove(userId);
+			for (int friendId : friendIds) {
+				edges.add(new int[]{userId, friendId});
+			}
+		}
+		FriendGraphIndex index = newIndex(edges.toArray(new int[0][]));
+
+		for (int userId = 1; userId <= 200; userId += 7) {
+			TreeSet<Integer> expected = new TreeSet<>();
+			for (int friendId : index.getFriends(userId)) {
+				for (int candidate : index.getFriends(friendId)) {
+					expected.add(candidate);
+				}
+			}
+			expected.remove(userId);
+			for (int friendId : index.getFriends(userId)) {
+				expected.remove(friendId);
+			}
+
+			List<Integer> paged = new ArrayList<>();
+			int afterId = 0;
+			int[] page;
+			do {
+				page = index.getFriendsOfFriends(userId, afterId, 10);
+				assertThat(page).hasSizeLessThanOrEqualTo(10);
+				for (int id : page) {
+					paged.add(id);
+					afterId = id;
+				}
+			} while (page.length == 10);
+			assertThat(paged).as("пользователь %d", userId).containsExactlyElementsOf(expected);
+		}
+	}
+
+	@Test
+	void testConcurrentMutationsKeepAdjacencySorted() throws Exception {
+		FriendGraphIndex index = newIndex(new int[0][]);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> writers = new ArrayList<>();
+		for (int thread = 0; thread < THREADS; thread++) {
+			int offset = thread * USERS_PER_THREAD;
+			writers.add(executor.submit(() -> {
+				for (int i = 1; i <= USERS_PER_THREAD; i++) {
+					index.addFriend(0, offset + i);
+					index.addFriend(offset + i, 0);
+					if (i % 2 == 0) {
+						index.removeFriend(0, offset + i);
+					}
+				}
+			}));
+		}
+		for (Future<?> writer : writers) {
+			writer.get();
+		}
+		executor.shutdown();
+
+		int[] friends = index.getFriends(0);
+		assertThat(friends).hasSize(THREADS * USERS_PER_THREAD / 2).isSorted();
+		assertThat(Arrays.stream(friends).allMatch(id -> id % 2 == 1)).isTrue();
+		assertThat(index.getFollowers(0)).hasSize(THREADS * USERS_PER_THREAD).isSorted();
+	}
+
+	@SuppressWarnings("unchecked")
+	private FriendGraphIndex newIndex(int[][] edges) {
+		FriendshipStorage storage = mock(FriendshipStorage.class);
+		doAnswer(invocation -> {
+			BiConsumer<Integer, Integer> consumer = invocation.getArgument(0);
+			for (int[] edge : edges) {
+				consumer.accept(edge[0], edge[1]);
+			}
+			return null;
+		}).when(storage).streamConfirmed(any(BiConsumer.class));
+		FriendGraphIndex index = new FriendGraphIndex(storage);
+		index.rebuild();
+		return index;
+	}
+}
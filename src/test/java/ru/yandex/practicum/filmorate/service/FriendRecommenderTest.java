@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class FriendRecommenderTest {
+	private static final int USERS = 3000;
+
+	@Test
+	void testRanksNonFriendsByMutualFriends() {
+		FriendGraphIndex friendGraph = new FriendGraphIndex(mock(FriendshipStorage.class));
+		FriendRecommender recommender = new FriendRecommender(friendGraph, 100);
+		friendGraph.addFriend(1, 2);
+		friendGraph.addFriend(1, 3);
+		friendGraph.addFriend(2, 4);
+		friendGraph.addFriend(3, 4);
+		friendGraph.addFriend(3, 5);
+		friendGraph.addFriend(2, 1);
+
+		assertThat(recommender.recommend(1, 10)).containsExactly(4, 5);
+		assertThat(recommender.recommend(1, 1)).containsExactly(4);
+
+		friendGraph.addFriend(1, 4);
+		assertThat(recommender.recommend(1, 10)).containsExactly(4, 5);
+		recommender.invalidate(1);
+		assertThat(recommender.recommend(1, 10)).containsExactly(5);
+
+		friendGraph.addFriend(5, 6);
+		recommender.invalidate(5);
+		assertThat(recommender.recommend(1, 10)).containsExactly(5);
+
+		friendGraph.addFriend(4, 6);
+		recommender.invalidate(4);
+		assertThat(recommender.recommend(1, 10)).containsExactly(5, 6);
+	}
+
+	@Test
+	void testParallelRankingMatchesSequentialCount() {
+		FriendGraphIndex friendGraph = new FriendGraphIndex(mock(FriendshipStorage.class));
+		Random random = new Random(42);
+		for (int userId = 1; userId <= USERS; userId++) {
+			int degree = userId == 1 ? 2000 : 1 + random.nextInt(20);
+			for (int i = 0; i < degree; i++) {
+				friendGraph.addFriend(userId, 1 + random.nextInt(USERS));
+			}
+		}
+		FriendRecommender recommender = new FriendRecommender(friendGraph, 100);
+
+		Map<Integer, Integer> expected = new HashMap<>();
+		int[] friends = friendGraph.getFriends(1);
+		for (int friendId : friends) {
+			for (int candidate : friendGraph.getFriends(friendId)) {
+				if (candidate != 1 && Arrays.binarySearch(friends, candidate) < 0) {
+					expected.merge(candidate, 1, Integer::sum);
+				}
+			}
+		}
+		int[] expectedTop = expected.entrySet().stream()
+				.sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed()
+						.thenComparing(Map.Entry.comparingByKey()))
+				.limit(50)
+				.mapToInt(Map.Entry::getKey)
+				.toArray();
+
+		assertThat(recommender.recommend(1, 50)).containsExactly(expectedTop);
+	}
+}
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.mockito.Mockito.*;
+
+class LikeCountReconcilerTest {
+	@Test
+	void testRepairedFilmsGetRepairedCountsInLeaderboard() {
+		FilmStorage filmStorage = mock(FilmStorage.class);
+		PopularityLeaderboard leaderboard = mock(PopularityLeaderboard.class);
+		when(filmStorage.reconcileLikeCounts()).thenReturn(Map.of(1, 2, 3, 0));
+
+		new LikeCountReconciler(filmStorage, leaderboard, Optional.empty()).reconcile();
+
+		verify(leaderboard).setLikes(1, 2);
+		verify(leaderboard).setLikes(3, 0);
+		verifyNoMoreInteractions(leaderboard);
+	}
+
+	@Test
+	void testNothingRepairedLeavesLeaderboardAlone() {
+		FilmStorage filmStorage = mock(FilmStorage.class);
+		PopularityLeaderboard leaderboard = mock(PopularityLeaderboard.class);
+		when(filmStorage.reconcileLikeCounts()).thenReturn(Map.of());
+
+		new LikeCountReconciler(filmStorage, leaderboard, Optional.empty()).reconcile();
+
+		verifyNoInteractions(leaderboard);
+	}
+
+	@Test
+	void testWaitsForPendingWriteBehindChanges() {
+		FilmStorage filmStorage = mock(FilmStorage.class);
+		PopularityLeaderboard leaderboard = mock(PopularityLeaderboard.class);
+		LikeWriteBehind likeWriteBehind = mock(LikeWriteBehind.class);
+		when(likeWriteBehind.pending()).thenReturn(3);
+
+		new LikeCountReconciler(filmStorage, leaderboard, Optional.of(likeWriteBehind)).reconcile();
+
+		verifyNoInteractions(filmStorage, leaderboard);
+	}
+}
@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class LikeMatrixTest {
+	private static final int TRIALS = 5_000;
+
+	@Test
+	void testAddAndRemoveUpdateBothSides() {
+		LikeMatrix matrix = new LikeMatrix(mock(FilmStorage.class));
+
+		assertThat(matrix.addLike(1, 10)).isTrue();
+		assertThat(matrix.addLike(1, 10)).isFalse();
+		assertThat(matrix.addLike(2, 10)).isTrue();
+		assertThat(matrix.removeLike(1, 10)).isTrue();
+		assertThat(matrix.removeLike(1, 10)).isFalse();
+
+		assertThat(matrix.getFilms(10)).containsExactly(2);
+		assertThat(matrix.getUsers(1)).isEmpty();
+		assertThat(matrix.getUsers(2)).containsExactly(10);
+	}
+
+	@Test
+	void testMatrixSeededFromStorageAndUpdatedIncrementally() {
+		LikeMatrix likeMatrix = newLikeMatrix(1, 10, 1, 11, 2, 10, 3, 12);
+
+		assertThat(likeMatrix.getFilms(1)).containsExactly(10, 11);
+		assertThat(likeMatrix.getUsers(10)).containsExactly(1, 2);
+		assertThat(likeMatrix.hasLike(12, 3)).isTrue();
+
+		likeMatrix.addLike(12, 1);
+		likeMatrix.removeLike(10, 2);
+
+		assertThat(likeMatrix.getFilms(1)).containsExactly(10, 11, 12);
+		assertThat(likeMatrix.getFilms(2)).isEmpty();
+		assertThat(likeMatrix.getUsers(10)).containsExactly(1);
+		assertThat(likeMatrix.hasLike(10, 2)).isFalse();
+	}
+
+	// Состояние проверяется после каждой пары гонок: следующая операция с тем же лайком могла бы скрыть расхождение
+	@Test
+	void testConcurrentAddAndRemoveOfSamePairKeepSidesConsistent() throws Exception {
+		FilmStorage storage = mock(FilmStorage.class);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int trial = 0; trial < TRIALS; trial++) {
+				LikeMatrix matrix = new LikeMatrix(storage);
+				CyclicBarrier start = new CyclicBarrier(2);
+				Future<?> remover = executor.submit(() -> {
+					start.await();
+					return matrix.removeLike(1, 10);
+				});
+				Future<?> adder = executor.submit(() -> {
+					start.await();
+					return matrix.addLike(1, 10);
+				});
+				remover.get();
+				adder.get();
+
+				assertThat(SortedIntArrays.contains(matrix.getUsers(1), 10))
+						.as("попытка %d", trial)
+						.isEqualTo(matrix.hasLike(1, 10));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	// Лайки передаются парами «пользователь, фильм» в порядке выдачи из БД
+	private LikeMatrix newLikeMatrix(int... likes) {
+		FilmStorage storage = mock(FilmStorage.class);
+		doAnswer(invocation -> {
+			BiConsumer<Integer, Integer> consumer = invocation.getArgument(0);
+			for (int i = 0; i < likes.length; i += 2) {
+				consumer.accept(likes[i], likes[i + 1]);
+			}
+			return null;
+		}).when(storage).streamLikes(any(BiConsumer.class));
+		LikeMatrix likeMatrix = new LikeMatrix(storage);
+		likeMatrix.rebuild();
+		return likeMatrix;
+	}
+}
@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.yandex.practicum.filmorate.exception.OverloadedException;
+import ru.yandex.practicum.filmorate.model.LikeChange;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class LikeWriteBehindTest {
+
+	@Test
+	void testCoalescesChangesToCurrentStateOfEachPair() {
+		LikeMatrix matrix = new LikeMatrix(mock(FilmStorage.class));
+		matrix.addLike(1, 2);
+		matrix.addLike(3, 1);
+
+		// Добавление и удаление пары (3, 1) попали в очередь в обратном порядке: пишется состояние матрицы
+		List<LikeChange> coalesced = LikeWriteBehind.coalesce(List.of(
+				new LikeChange(1, 1, true),
+				new LikeChange(1, 2, true),
+				new LikeChange(1, 1, false),
+				new LikeChange(3, 1, true),
+				new LikeChange(1, 2, false),
+				new LikeChange(3, 1, false)), matrix);
+
+		assertThat(coalesced).containsExactly(
+				new LikeChange(1, 1, false),
+				new LikeChange(1, 2, true),
+				new LikeChange(3, 1, true));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void testBatchesAreFlushedAndQueueIsDrainedOnShutdown() throws Exception {
+		FilmStorage storage = mock(FilmStorage.class);
+		List<List<LikeChange>> batches = new ArrayList<>();
+		AtomicInteger failures = new AtomicInteger(1);
+		when(storage.applyLikeChanges(anyList())).thenAnswer(invocation -> {
+			if (failures.getAndDecrement() > 0) {
+				throw new IllegalStateException("БД недоступна");
+			}
+			batches.add(new ArrayList<>(invocation.getArgument(0, List.class)));
+			return Map.of();
+		});
+		LikeMatrix matrix = new LikeMatrix(storage);
+		PopularityLeaderboard leaderboard = mock(PopularityLeaderboard.class);
+		LikeWriteBehind writeBehind = new LikeWriteBehind(storage, matrix, leaderboard, 10_000, 100,
+				Duration.ofSeconds(10), Duration.ofMillis(10));
+
+		for (int userId = 1; userId <= 250; userId++) {
+			matrix.addLike(1, userId);
+			writeBehind.reserve();
+			writeBehind.submit(new LikeChange(1, userId, true));
+		}
+		writeBehind.shutdown();
+
+		assertThat(writeBehind.pending()).isZero();
+		assertThat(batches).allMatch(batch -> batch.size() <= 100);
+		assertThat(batches.stream().mapToInt(List::size).sum()).isEqualTo(250);
+		verify(storage, atLeast(4)).applyLikeChanges(anyList());
+		verify(leaderboard, times(batches.size())).advanceEpoch();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void testPermanentlyFailingChangeIsDroppedWithoutBlockingOthers() throws Exception {
+		FilmStorage storage = mock(FilmStorage.class);
+		List<LikeChange> written = new ArrayList<>();
+		when(storage.applyLikeChanges(anyList())).thenAnswer(invocation -> {
+			List<LikeChange> changes = invocation.getArgument(0, List.class);
+			if (changes.stream().anyMatch(change -> change.filmId() == 13)) {
+				throw new DataIntegrityViolationException("Фильм 13 удалён");
+			}
+			written.addAll(changes);
+			return Map.of();
+		});
+		LikeMatrix matrix = new LikeMatrix(storage);
+		LikeWriteBehind writeBehind = new LikeWriteBehind(storage, matrix, mock(PopularityLeaderboard.class), 10_000, 8,
+				Duration.ofSeconds(10), Duration.ofMillis(10));
+
+		for (int filmId = 10; filmId < 18; filmId++) {
+			matrix.addLike(filmId, 1);
+			writeBehind.reserve();
+			writeBehind.submit(new LikeChange(filmId, 1, true));
+		}
+		writeBehind.shutdown();
+
+		assertThat(written).extracting(LikeChange::filmId).containsExactlyInAnyOrder(10, 11, 12, 14, 15, 16, 17);
+		assertThat(writeBehind.pending()).isZero();
+	}
+
+	@Test
+	void testRejectsWhenQueueIsFull() throws Exception {
+		FilmStorage storage = mock(FilmStorage.class);
+		LikeWriteBehind writeBehind = new LikeWriteBehind(storage, new LikeMatrix(storage),
+				mock(PopularityLeaderboard.class), 2, 100, Duration.ofSeconds(10), Duration.ofMillis(10));
+
+		writeBehind.reserve();
+		writeBehind.reserve();
+		assertThrows(OverloadedException.class, writeBehind::reserve);
+
+		writeBehind.release();
+		writeBehind.reserve();
+		writeBehind.release();
+		writeBehind.release();
+		writeBehind.shutdown();
+	}
+}
@@ -0,0 +1,149 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class PopularityLeaderboardTest {
+	private static final int FILMS = 50;
+	private static final int THREADS = 8;
+	private static final int OPERATIONS_PER_THREAD = 20_000;
+
+	@Test
+	void testSeededFromStorageAndOrderedByLikes() {
+		PopularityLeaderboard leaderboard = newLeaderboard(Map.of(1, 5, 2, 7, 3, 5, 4, 0));
+
+		assertThat(leaderboard.getTop(10)).containsExactly(2, 1, 3, 4);
+		assertThat(leaderboard.getTop(2)).containsExactly(2, 1);
+
+		leaderboard.putFilm(film(5, 1, 1, 2000));
+		leaderboard.increment(5);
+		leaderboard.decrement(2);
+		leaderboard.decrement(2);
+		leaderboard.decrement(2);
+
+		assertThat(leaderboard.getTop(10)).containsExactly(1, 3, 2, 5, 4);
+		assertThat(leaderboard.getLikes(2)).isEqualTo(4);
+
+		leaderboard.setLikes(4, 6);
+
+		assertThat(leaderboard.getTop(10)).containsExactly(4, 1, 3, 2, 5);
+	}
+
+	@Test
+	void testConcurrentLikesKeepCountsAndRankingConsistent() throws Exception {
+		Map<Integer, Integer> seed = new HashMap<>();
+		for (int filmId = 1; filmId <= FILMS; filmId++) {
+			seed.put(filmId, OPERATIONS_PER_THREAD);
+		}
+		PopularityLeaderboard leaderboard = newLeaderboard(seed);
+		AtomicIntegerArray expected = new AtomicIntegerArray(FILMS + 1);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+
+		Future<?> reader = executor.submit(() -> {
+			while (writing.get()) {
+				List<Integer> top = leaderboard.getTop(FILMS);
+				assertThat(top).doesNotHaveDuplicates().hasSize(FILMS);
+			}
+		});
+		List<Future<?>> writers = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			writers.add(executor.submit(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+					int filmId = random.nextInt(1, FILMS + 1);
+					if (random.nextBoolean()) {
+						leaderboard.increment(filmId);
+						expected.incrementAndGet(filmId);
+					} else {
+						leaderboard.decrement(filmId);
+						expected.decrementAndGet(filmId);
+					}
+				}
+			}));
+		}
+		for (Future<?> writer : writers) {
+			writer.get(1, TimeUnit.MINUTES);
+		}
+		writing.set(false);
+		reader.get(1, TimeUnit.MINUTES);
+		executor.shutdown();
+
+		List<Integer> expectedOrder = new ArrayList<>(seed.keySet());
+		expectedOrder.sort(Comparator
+				.comparingInt((Integer filmId) -> OPERATIONS_PER_THREAD + expected.get(filmId)).reversed()
+				.thenComparingInt(filmId -> filmId));
+		for (int filmId = 1; filmId <= FILMS; filmId++) {
+			assertThat(leaderboard.getLikes(filmId)).isEqualTo(OPERATIONS_PER_THREAD + expected.get(filmId));
+		}
+		assertThat(leaderboard.getTop(FILMS)).containsExactlyElementsOf(expectedOrder);
+	}
+
+	@Test
+	void testFacetRankingsFollowFilmChanges() {
+		PopularityLeaderboard leaderboard = newLeaderboard(Map.of());
+		leaderboard.putFilm(film(1, 1, 1, 2023));
+		leaderboard.putFilm(film(2, 2, 3, 2023));
+		leaderboard.putFilm(film(3, 1, 3, 1999));
+		leaderboard.increment(3);
+		leaderboard.increment(3);
+		leaderboard.increment(2);
+
+		assertThat(leaderboard.getTop(10, 1, null, null)).containsExactly(3, 1);
+		assertThat(leaderboard.getTop(10, null, 3, null)).containsExactly(3, 2);
+		assertThat(leaderboard.getTop(10, null, null, 2023)).containsExactly(2, 1);
+		assertThat(leaderboard.getTop(10, 1, 3, 1999)).containsExactly(3);
+		assertThat(leaderboard.getTop(10, 6, null, null)).isEmpty();
+
+		leaderboard.putFilm(film(3, 2, 1, 2023));
+
+		assertThat(leaderboard.getTop(10, 1, null, null)).containsExactly(1);
+		assertThat(leaderboard.getTop(10, null, null, 2023)).containsExactly(3, 2, 1);
+		assertThat(leaderboard.getLikes(3)).isEqualTo(2);
+	}
+
+	@SuppressWarnings("unchecked")
+	private PopularityLeaderboard newLeaderboard(Map<Integer, Integer> likeCounts) {
+		FilmStorage filmStorage = mock(FilmStorage.class);
+		doAnswer(invocation -> {
+			Consumer<Film> consumer = invocation.getArgument(0);
+			likeCounts.forEach((filmId, likes) -> {
+				Film film = film(filmId, 1, 1, 2000);
+				film.setLikeCount(likes);
+				consumer.accept(film);
+			});
+			return null;
+		}).when(filmStorage).streamAll(any(Consumer.class));
+		PopularityLeaderboard leaderboard = new PopularityLeaderboard(filmStorage);
+		leaderboard.rebuild();
+		return leaderboard;
+	}
+
+	private static Film film(int id, int genreId, int mpaId, int year) {
+		Genre genre = new Genre();
+		genre.setId(genreId);
+		MpaRating mpa = new MpaRating();
+		mpa.setId(mpaId);
+		Film film = new Film();
+		film.setId(id);
+		film.setGenres(List.of(genre));
+		film.setMpa(mpa);
+		film.setReleaseDate(LocalDate.of(year, 1, 1));
+		return film;
+	}
+}
@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class UserServiceTest {
+	// Добавление фиксируется в «БД» и задерживается до обновления графа: удаление той же дружбы,
+	// пришедшее в этот момент, не должно обогнать его в памяти
+	@Test
+	void testConcurrentAddAndRemoveOfSameFriendshipKeepGraphInDbOrder() throws Exception {
+		Set<Long> friendships = ConcurrentHashMap.newKeySet();
+		CountDownLatch committed = new CountDownLatch(1);
+		UserStorage userStorage = mock(UserStorage.class);
+		doAnswer(invocation -> {
+			friendships.add(pair(1, 2));
+			committed.countDown();
+			Thread.sleep(50);
+			return null;
+		}).when(userStorage).addFriend(1, 2);
+		doAnswer(invocation -> friendships.remove(pair(1, 2))).when(userStorage).removeFriend(1, 2);
+		FriendGraphIndex friendGraph = new FriendGraphIndex(mock(FriendshipStorage.class));
+		UserService userService = new UserService(userStorage, mock(FriendshipStorage.class), friendGraph,
+				mock(FriendRecommender.class));
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> adder = executor.submit(() -> userService.addFriend(1, 2));
+			Future<?> remover = executor.submit(() -> {
+				committed.await();
+				userService.removeFriend(1, 2);
+				return null;
+			});
+			adder.get();
+			remover.get();
+		} finally {
+			executor.shutdown();
+		}
+
+		assertThat(friendships).isEmpty();
+		assertThat(friendGraph.getFriends(1)).isEmpty();
+		assertThat(friendGraph.getFollowers(2)).isEmpty();
+	}
+
+	private static long pair(int userId, int friendId) {
+		return (long) userId << 32 | friendId;
+	}
+}
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.storage.accounting;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:sql-accounting-disabled;DB_CLOSE_DELAY=-1",
+		"filmorate.sql.accounting.enabled=false"
+})
+class SqlAccountingDisabledTest {
+	@Autowired
+	private ApplicationContext context;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Test
+	void applicationStartsWithoutAccountingBeans() {
+		assertThat(context.getBeansOfType(SqlAccountingFilter.class)).isEmpty();
+		assertThat(context.getBeansOfType(SqlStatisticsResponseAdvice.class)).isEmpty();
+		assertThat(dataSource).isNotInstanceOf(StatementAccountingDataSource.class);
+	}
+}
@@ -0,0 +1,136 @@
+package ru.yandex.practicum.filmorate.storage.accounting;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.storage.film.CachingFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Бюджет SQL-запросов на эндпоинт: рост числа запросов или повторы одного запроса (N+1) валят сборку.
+ * Повторный запрос с ETag неизменившегося ресурса должен получить 304, не загружая сущность.
+ */
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:sql-budget;DB_CLOSE_DELAY=-1",
+		"filmorate.sql.accounting.enabled=true",
+		"filmorate.sql.accounting.sample-rate=0"
+})
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SqlStatementBudgetTest {
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	@Qualifier("filmStorage")
+	private FilmStorage filmStorage;
+
+	@BeforeAll
+	void seed() throws Exception {
+		for (int i = 1; i <= 3; i++) {
+			mockMvc.perform(post("/users").contentType(MediaType.APPLICATION_JSON)
+							.content("{\"email\":\"user" + i + "@mail.ru\",\"login\":\"user" + i
+									+ "\",\"birthday\":\"2000-01-01\"}"))
+					.andExpect(status().isOk());
+			mockMvc.perform(post("/films").contentType(MediaType.APPLICATION_JSON)
+							.content("{\"name\":\"Film " + i + "\",\"description\":\"Description\","
+									+ "\"releaseDate\":\"2000-01-01\",\"duration\":100,\"mpa\":{\"id\":1},"
+									+ "\"genres\":[{\"id\":1},{\"id\":2}]}"))
+					.andExpect(status().isOk());
+		}
+		mockMvc.perform(put("/users/1/friends/2")).andExpect(status().isOk());
+		mockMvc.perform(put("/users/3/friends/2")).andExpect(status().isOk());
+		mockMvc.perform(put("/films/2/like/1")).andExpect(status().isOk());
+		mockMvc.perform(put("/films/3/like/2")).andExpect(status().isOk());
+	}
+
+	// Бюджеты считаются на холодном кэше фильмов, чтобы не зависеть от порядка случаев в общем контексте
+	@BeforeEach
+	void clearFilmCache() {
+		if (filmStorage instanceof CachingFilmStorage cachingStorage) {
+			cachingStorage.getCache().invalidateAll();
+		}
+	}
+
+	@ParameterizedTest(name = "{0} {1} <= {2}")
+	@CsvSource({
+			"GET, /films/1, 3",
+			"GET, /films?after=0&limit=10, 2",
+			"GET, /films, 2",
+			"GET, /films/popular?count=10, 2",
+			"GET, /genres, 0",
+			"GET, /mpa, 0",
+			"GET, /users/1, 2",
+			"GET, /users/1/friends, 2",
+			"GET, /users/1/friends/common/3, 3",
+			"GET, /users/1/recommendations, 1",
+			"PUT, /films/1/like/3, 4",
+			"DELETE, /films/1/like/3, 4"
+	})
+	void endpointStaysWithinStatementBudget(String method, String uri, int budget) throws Exception {
+		MockHttpServletResponse response = mockMvc.perform(request(HttpMethod.valueOf(method), uri)
+						.header(SqlAccountingFilter.FORCE_HEADER, "true"))
+				.andExpect(status().is2xxSuccessful())
+				.andReturn().getResponse();
+
+		assertThat(response.getHeader(SqlStatisticsResponseAdvice.STATEMENTS_HEADER))
+				.isNotNull()
+				.satisfies(statements -> assertThat(Integer.parseInt(statements)).isLessThanOrEqualTo(budget));
+		assertThat(response.getHeader(SqlStatisticsResponseAdvice.REPEATED_HEADER)).isNull();
+	}
+
+	// Популярные фильмы, прочитанные один раз, дальше отдаются из рейтинга и кэша без обращения к БД
+	@Test
+	void popularFilmsOnWarmCacheNeedNoStatements() throws Exception {
+		mockMvc.perform(get("/films/popular?count=10")).andExpect(status().isOk());
+
+		MockHttpServletResponse response = mockMvc.perform(get("/films/popular?count=10")
+						.header(SqlAccountingFilter.FORCE_HEADER, "true"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse();
+
+		assertThat(response.getHeader(SqlStatisticsResponseAdvice.STATEMENTS_HEADER)).isEqualTo("0");
+	}
+
+	@ParameterizedTest(name = "{0} revalidation <= {1}")
+	@CsvSource({
+			"/films/2, 0",
+			"/films/popular?count=10, 0",
+			"/genres, 0",
+			"/users/2, 1"
+	})
+	void unchangedResourceIsRevalidatedWithinBudget(String uri, int budget) throws Exception {
+		String eTag = mockMvc.perform(get(uri))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		MockHttpServletResponse response = mockMvc.perform(get(uri)
+						.header(HttpHeaders.IF_NONE_MATCH, eTag)
+						.header(SqlAccountingFilter.FORCE_HEADER, "true"))
+				.andExpect(status().isNotModified())
+				.andReturn().getResponse();
+
+		assertThat(response.getContentAsByteArray()).isEmpty();
+		assertThat(Integer.parseInt(response.getHeader(SqlStatisticsResponseAdvice.STATEMENTS_HEADER)))
+				.isLessThanOrEqualTo(budget);
+	}
+}
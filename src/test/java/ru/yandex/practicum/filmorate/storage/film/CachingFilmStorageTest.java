@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+class CachingFilmStorageTest {
+	private FilmStorage delegate;
+	private CachingFilmStorage storage;
+
+	@BeforeEach
+	void setUp() {
+		delegate = mock(FilmStorage.class);
+		storage = new CachingFilmStorage(delegate, 100, Duration.ofMinutes(10));
+		when(delegate.getFilmById(1)).thenAnswer(invocation -> film(1, 0));
+		when(delegate.getFilmById(2)).thenAnswer(invocation -> film(2, 3));
+		when(delegate.getFilmById(3)).thenThrow(new NotFoundException("Фильм с ID 3 не найден"));
+	}
+
+	@Test
+	void testRepeatedReadsHitCache() {
+		storage.getFilmById(1);
+		storage.getFilmById(1);
+		storage.getFilmById(1);
+
+		verify(delegate, times(1)).getFilmById(1);
+		assertThat(storage.getCache().stats().hitCount()).isEqualTo(2);
+		assertThat(storage.getCache().stats().missCount()).isEqualTo(1);
+	}
+
+	@Test
+	void testMissingFilmIsNotCached() {
+		assertThrows(NotFoundException.class, () -> storage.getFilmById(3));
+		assertThrows(NotFoundException.class, () -> storage.getFilmById(3));
+
+		verify(delegate, times(2)).getFilmById(3);
+	}
+
+	@Test
+	void testUpdateInvalidatesFilm() {
+		Film film = storage.getFilmById(1);
+		storage.update(film);
+		storage.getFilmById(1);
+
+		verify(delegate, times(2)).getFilmById(1);
+	}
+
+	@Test
+	void testChangedLikesInvalidateFilm() {
+		when(delegate.addLike(1, 10)).thenReturn(true);
+		when(delegate.addLike(2, 10)).thenReturn(false);
+		storage.getFilmById(1);
+		storage.getFilmById(2);
+
+		storage.addLike(1, 10);
+		storage.addLike(2, 10);
+		storage.getFilmById(1);
+		storage.getFilmById(2);
+
+		verify(delegate, times(2)).getFilmById(1);
+		verify(delegate, times(1)).getFilmById(2);
+	}
+
+	@Test
+	void testGetFilmsByIdsLoadsOnlyMissingFilmsInOneCall() {
+		when(delegate.getFilmsByIds(anyList())).thenAnswer(invocation -> {
+			List<Integer> ids = invocation.getArgument(0);
+			return ids.stream().map(id -> film(id, 0)).toList();
+		});
+		storage.getFilmById(1);
+
+		List<Film> films = storage.getFilmsByIds(List.of(4, 1, 5));
+
+		assertThat(films).extracting(Film::getId).containsExactly(4, 1, 5);
+		verify(delegate, times(1)).getFilmsByIds(argThat(ids -> ids.size() == 2 && !ids.contains(1)));
+	}
+
+	private static Film film(int id, int likeCount) {
+		Film film = new Film();
+		film.setId(id);
+		film.setName("Film " + id);
+		film.setLikeCount(likeCount);
+		return film;
+	}
+}
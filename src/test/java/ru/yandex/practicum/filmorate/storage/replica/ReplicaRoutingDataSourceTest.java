@@ -0,0 +1,109 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Каждая БД хранит своё имя в таблице marker, поэтому по результату запроса видно, куда ушло соединение.
+ */
+class ReplicaRoutingDataSourceTest {
+	private JdbcTemplate jdbcTemplate;
+	private TransactionTemplate readOnlyTransaction;
+	private TransactionTemplate writeTransaction;
+
+	@BeforeEach
+	void setUp() {
+		DataSource routing = new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(
+				database("primary"), List.of(database("replica0"), database("replica1"))));
+		jdbcTemplate = new JdbcTemplate(routing);
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(routing);
+		readOnlyTransaction = new TransactionTemplate(transactionManager);
+		readOnlyTransaction.setReadOnly(true);
+		writeTransaction = new TransactionTemplate(transactionManager);
+		ReplicaRoutingDataSource.releasePrimary();
+	}
+
+	@AfterEach
+	void tearDown() {
+		ReplicaRoutingDataSource.releasePrimary();
+	}
+
+	@Test
+	void testReadOnlyTransactionsAreBalancedAcrossReplicas() {
+		assertThat(markerInReadOnlyTransaction()).isEqualTo("replica0");
+		assertThat(markerInReadOnlyTransaction()).isEqualTo("replica1");
+		assertThat(markerInReadOnlyTransaction()).isEqualTo("replica0");
+	}
+
+	@Test
+	void testWriteTransactionsAndReadsAfterThemStayOnPrimary() {
+		assertThat(markerInWriteTransaction()).isEqualTo("primary");
+		assertThat(markerInReadOnlyTransaction()).isEqualTo("primary");
+
+		ReplicaRoutingDataSource.releasePrimary();
+		assertThat(markerInReadOnlyTransaction()).startsWith("replica");
+
+		jdbcTemplate.update("UPDATE marker SET name = name");
+		assertThat(markerInReadOnlyTransaction()).startsWith("replica");
+
+		writeTransaction.executeWithoutResult(status -> jdbcTemplate.update("UPDATE marker SET name = name"));
+		assertThat(markerInReadOnlyTransaction()).isEqualTo("primary");
+	}
+
+	@Test
+	void testReadFromPrimaryBypassesReplicasOnlyForItsScope() {
+		assertThat(ReplicaRoutingDataSource.readFromPrimary(this::markerInReadOnlyTransaction)).isEqualTo("primary");
+		assertThat(ReplicaRoutingDataSource.readFromPrimary(() ->
+				ReplicaRoutingDataSource.readFromPrimary(this::markerInReadOnlyTransaction))).isEqualTo("primary");
+		assertThat(markerInReadOnlyTransaction()).startsWith("replica");
+	}
+
+	@Test
+	void testDestroyClosesReplicaPoolsButNotPrimary() throws Exception {
+		HikariDataSource primary = mock(HikariDataSource.class);
+		HikariDataSource replica0 = mock(HikariDataSource.class);
+		HikariDataSource replica1 = mock(HikariDataSource.class);
+
+		new ReplicaRoutingDataSource(primary, List.of(replica0, replica1)).destroy();
+
+		verify(replica0).close();
+		verify(replica1).close();
+		verify(primary, never()).close();
+	}
+
+	private String markerInReadOnlyTransaction() {
+		return readOnlyTransaction.execute(status -> marker());
+	}
+
+	private String markerInWriteTransaction() {
+		return writeTransaction.execute(status -> marker());
+	}
+
+	private String marker() {
+		return jdbcTemplate.queryForObject("SELECT name FROM marker", String.class);
+	}
+
+	private static DataSource database(String name) {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS marker (name VARCHAR(20))");
+		jdbcTemplate.update("DELETE FROM marker");
+		jdbcTemplate.update("INSERT INTO marker VALUES (?)", name);
+		return dataSource;
+	}
+}